@@ -0,0 +1,27 @@
+CREATE TABLE dataset_statistics
+(
+	fk_dataset_id bigint NOT NULL,
+	stats_day timestamp NOT NULL,
+	value_count bigint NOT NULL,
+	value_min numeric,
+	value_max numeric,
+	value_sum numeric,
+	value_sum_count bigint NOT NULL,
+	first_time timestamp NOT NULL,
+	first_value numeric,
+	last_time timestamp NOT NULL,
+	last_value numeric,
+	CONSTRAINT datasetstatisticspk PRIMARY KEY (fk_dataset_id, stats_day),
+	CONSTRAINT datasetstatisticsfk FOREIGN KEY (fk_dataset_id)
+		REFERENCES dataset (dataset_id) MATCH SIMPLE
+		ON UPDATE NO ACTION ON DELETE CASCADE
+);
+
+CREATE TABLE dataset_statistics_built
+(
+	fk_dataset_id bigint NOT NULL,
+	CONSTRAINT datasetstatisticsbuiltpk PRIMARY KEY (fk_dataset_id),
+	CONSTRAINT datasetstatisticsbuiltfk FOREIGN KEY (fk_dataset_id)
+		REFERENCES dataset (dataset_id) MATCH SIMPLE
+		ON UPDATE NO ACTION ON DELETE CASCADE
+);
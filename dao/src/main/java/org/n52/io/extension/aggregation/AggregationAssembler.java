@@ -27,28 +27,46 @@
  */
 package org.n52.io.extension.aggregation;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import org.n52.io.extension.ExtensionAssembler;
 import org.n52.io.handler.DatasetFactoryException;
 import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
 import org.n52.io.response.OptionalOutput;
+import org.n52.io.response.TimeOutput;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.AggregationOutput;
 import org.n52.sensorweb.server.db.ValueAssembler;
 import org.n52.sensorweb.server.db.assembler.value.AbstractNumericalValueAssembler;
 import org.n52.sensorweb.server.db.assembler.value.AbstractValueAssembler;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptor;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptorCache;
 import org.n52.sensorweb.server.db.factory.DataRepositoryTypeFactory;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
+import org.n52.sensorweb.server.db.query.DataQuerySpecifications;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
+import org.n52.sensorweb.server.db.statistics.DatasetStatisticsRollup;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.dataset.ValueType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -59,32 +77,61 @@ public class AggregationAssembler extends ExtensionAssembler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AggregationAssembler.class);
 
+    // calendar fields down to the day
+    private static final int DAY_PRECISION = 3;
+
     private EntityManager entityManager;
 
+    /**
+     * The zone timestamps are stored in, calendar fields are extracted by the database in this zone.
+     */
+    @Value("${series.database.timezone:UTC}")
+    private String databaseTimezone;
+
     private final DataRepositoryTypeFactory dataRepositoryFactory;
 
+    private final DatasetStatisticsRollup statisticsRollup;
+
+    private final DatasetDescriptorCache datasetDescriptors;
+
     public AggregationAssembler(EntityManager entityManager, DatasetRepository datasetRepository,
-            DataRepositoryTypeFactory dataRepositoryFactory, DbQueryFactory dbQueryFactory) {
+            DataRepositoryTypeFactory dataRepositoryFactory, DbQueryFactory dbQueryFactory,
+            DatasetStatisticsRollup statisticsRollup, DatasetDescriptorCache datasetDescriptors) {
         super(datasetRepository, dbQueryFactory);
         this.entityManager = entityManager;
         this.dataRepositoryFactory = dataRepositoryFactory;
+        this.statisticsRollup = statisticsRollup;
+        this.datasetDescriptors = datasetDescriptors;
     }
 
     public <V extends AbstractValue<?>> AggregationOutput<V> getExtras(String id, IoParameters parameters) {
         try {
-            AggregationOutput<V> aggregation = new AggregationOutput<>();
             DbQuery query = getDbQuery(parameters);
-            Optional<DatasetEntity> optional = getDatasetRepository().findById(Long.parseLong(id));
-            if (optional.isPresent()) {
+            AggregationOutput<V> aggregation = query.getAggregationPeriod() != null
+                    ? new BucketedAggregationOutput<>()
+                    : new AggregationOutput<>();
+            // types are resolved from the cached descriptor, the entity is loaded only to aggregate its data
+            Optional<DatasetDescriptor> descriptor = datasetDescriptors.get(Long.parseLong(id));
+            if (descriptor.isPresent()) {
+                DatasetDescriptor dataset = descriptor.get();
+                ValueAssembler<?, ?, ?> assembler = dataRepositoryFactory.create(dataset.getDatasetType(),
+                        dataset.getObservationType(), dataset.getValueType(), DatasetEntity.class);
+                if (!(assembler instanceof AbstractValueAssembler)) {
+                    return aggregation;
+                }
+                Optional<DatasetEntity> optional = getDatasetRepository().findById(dataset.getId());
+                if (!optional.isPresent()) {
+                    return aggregation;
+                }
                 DatasetEntity entity = optional.get();
-                ValueAssembler<?, ?, ?> assembler = dataRepositoryFactory.create(entity.getDatasetType().name(),
-                        entity.getObservationType().name(), entity.getValueType().name(), DatasetEntity.class);
-                if (assembler instanceof AbstractValueAssembler) {
-                    addCount(aggregation, (AbstractValueAssembler<?, ?, ?>) assembler, entity, query, entityManager);
-                    if (checkNumerical(entity) && assembler instanceof AbstractNumericalValueAssembler) {
-                        addAggregation(aggregation, (AbstractNumericalValueAssembler<DataEntity<?>, V, ?>) assembler,
-                                entity, query, entityManager);
+                if (checkNumerical(dataset) && assembler instanceof AbstractNumericalValueAssembler) {
+                    addAggregation(aggregation, (AbstractNumericalValueAssembler<DataEntity<?>, V, ?>) assembler,
+                            entity, query, entityManager);
+                    if (aggregation instanceof BucketedAggregationOutput) {
+                        addBuckets((BucketedAggregationOutput<V>) aggregation, entity, query);
                     }
+                } else {
+                    addCount(aggregation, (AbstractValueAssembler<?, ?, ?>) assembler, entity, query, entityManager);
                 }
             }
             return aggregation;
@@ -102,13 +149,156 @@ public class AggregationAssembler extends ExtensionAssembler {
     private <V extends AbstractValue<?>> void addAggregation(AggregationOutput<V> aggregation,
             AbstractNumericalValueAssembler<DataEntity<?>, V, ?> dataRepository, DatasetEntity dataset, DbQuery query,
             EntityManager entityManager) {
-        aggregation.setMax(OptionalOutput.of(dataRepository.getMax(dataset, query)));
-        aggregation.setMin(OptionalOutput.of(dataRepository.getMin(dataset, query)));
-        aggregation.setAvg(OptionalOutput.of(dataRepository.getAverage(dataset, query)));
+        // count, min, max and avg within one query, min and max values resolved by one more query
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
+        Optional<Tuple> total = hasDataFilters(query) ? Optional.empty() : statisticsRollup.getTotal(dataset);
+        Tuple statistics = total.orElseGet(() -> dataFilterSpec.statistics(dataset, entityManager));
+        long count = statistics.get(0, Number.class).longValue();
+        aggregation.setCount(OptionalOutput.of(count));
+        Number min = statistics.get(1, Number.class);
+        Number max = statistics.get(2, Number.class);
+        // all values may be null, e.g. no data values stored as null
+        if (count > 0 && min != null && max != null) {
+            List<DataEntity> extremes =
+                    dataFilterSpec.matchLatestByValues(dataset, Arrays.asList(min, max), entityManager);
+            if (extremes.size() > 1 && extremes.get(0) != null && extremes.get(1) != null) {
+                aggregation.setMin(
+                        OptionalOutput.of(dataRepository.assembleDataValue(extremes.get(0), dataset, query)));
+                aggregation.setMax(
+                        OptionalOutput.of(dataRepository.assembleDataValue(extremes.get(1), dataset, query)));
+            }
+        }
+        Number sumOrAvg = statistics.get(3, Number.class);
+        if (count > 0 && sumOrAvg != null) {
+            // like avg(value), the rollup's sum is divided by the number of values not being null
+            BigDecimal avg = total.isPresent()
+                    ? toBigDecimal(sumOrAvg).divide(toBigDecimal(total.get().get(4, Number.class)),
+                            MathContext.DECIMAL64)
+                    : BigDecimal.valueOf(sumOrAvg.doubleValue());
+            aggregation.setAvg(OptionalOutput.of(avg));
+        }
+    }
+
+    /**
+     * Aggregates the data within the requested timespan into buckets of the requested period. Minimum, maximum,
+     * sum and count are computed by the database per calendar group, the first and last values of each group
+     * are fetched by a second query. Groups are then folded into the buckets, which is one to one for periods
+     * of a single calendar unit like {@code P1D}. Periods of full days over a timespan of full days are taken
+     * from the statistics rollup, if enabled.
+     */
+    private <V extends AbstractValue<?>> void addBuckets(BucketedAggregationOutput<V> aggregation,
+            DatasetEntity dataset, DbQuery query) {
+        AggregationPeriod period = AggregationPeriod.parse(query.getAggregationPeriod());
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
+        List<String> calendarFields = period.getCalendarFields();
+        Map<Long, BigDecimal> boundaryValues = new HashMap<>();
+        Optional<List<Tuple>> days = calendarFields.size() <= DAY_PRECISION
+                && statisticsRollup.isAligned(query.getTimespan())
+                        ? statisticsRollup.getDays(dataset, query.getTimespan())
+                        : Optional.empty();
+        List<Tuple> groups;
+        if (days.isPresent()) {
+            groups = days.get();
+            for (Tuple day : groups) {
+                boundaryValues.put(day.get(0, Date.class).getTime(), toBigDecimal(day.get(7, Number.class)));
+                boundaryValues.put(day.get(1, Date.class).getTime(), toBigDecimal(day.get(8, Number.class)));
+            }
+        } else {
+            groups = dataFilterSpec.aggregateByCalendarFields(dataset, calendarFields, entityManager);
+            for (Tuple row : dataFilterSpec.matchFirstAndLastByCalendarFields(dataset, calendarFields,
+                    entityManager)) {
+                boundaryValues.putIfAbsent(row.get(0, Date.class).getTime(),
+                        toBigDecimal(row.get(1, Number.class)));
+            }
+        }
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        DateTime timespanStart = query.getTimespan().getStart();
+        DateTimeZone zone = timespanStart.getZone();
+        boolean unixTime = query.getParameters().formatToUnixTime();
+        DateTime firstBucketStart = period.getFirstBucketStart(timespanStart, DateTimeZone.forID(databaseTimezone));
+        int index = 0;
+        DateTime bucketEnd = period.getBucketStart(firstBucketStart, 1);
+        AggregationBucketOutput bucket = null;
+        Date bucketLast = null;
+        // the number of values not being null, the divisor of the average
+        long bucketValueCount = 0;
+        for (Tuple group : groups) {
+            Date groupFirst = group.get(0, Date.class);
+            if (!groupFirst.before(bucketEnd.toDate())) {
+                while (!groupFirst.before(bucketEnd.toDate())) {
+                    index++;
+                    bucketEnd = period.getBucketStart(firstBucketStart, index + 1);
+                }
+                closeBucket(bucket, bucketLast, bucketValueCount, boundaryValues);
+                bucket = null;
+                bucketValueCount = 0;
+            }
+            if (bucket == null) {
+                bucket = new AggregationBucketOutput();
+                bucket.setTimestart(new TimeOutput(period.getBucketStart(firstBucketStart, index).withZone(zone),
+                        unixTime));
+                bucket.setTimeend(new TimeOutput(bucketEnd.withZone(zone), unixTime));
+                bucket.setFirst(boundaryValues.get(groupFirst.getTime()));
+                aggregation.addBucket(bucket);
+            }
+            bucketLast = group.get(1, Date.class);
+            bucketValueCount += group.get(6, Number.class).longValue();
+            addGroup(bucket, group);
+        }
+        closeBucket(bucket, bucketLast, bucketValueCount, boundaryValues);
+    }
+
+    private void addGroup(AggregationBucketOutput bucket, Tuple group) {
+        BigDecimal min = toBigDecimal(group.get(3, Number.class));
+        BigDecimal max = toBigDecimal(group.get(4, Number.class));
+        BigDecimal sum = toBigDecimal(group.get(5, Number.class));
+        bucket.setCount(bucket.getCount() + group.get(2, Number.class).longValue());
+        bucket.setMin(bucket.getMin() == null || min != null && min.compareTo(bucket.getMin()) < 0
+                ? min
+                : bucket.getMin());
+        bucket.setMax(bucket.getMax() == null || max != null && max.compareTo(bucket.getMax()) > 0
+                ? max
+                : bucket.getMax());
+        // groups of null values only have no sum
+        bucket.setSum(bucket.getSum() == null || sum == null
+                ? bucket.getSum() == null ? sum : bucket.getSum()
+                : bucket.getSum().add(sum));
+    }
+
+    private void closeBucket(AggregationBucketOutput bucket, Date last, long valueCount,
+            Map<Long, BigDecimal> boundaryValues) {
+        if (bucket != null) {
+            bucket.setLast(boundaryValues.get(last.getTime()));
+            if (bucket.getSum() != null && valueCount > 0) {
+                bucket.setAvg(bucket.getSum().divide(BigDecimal.valueOf(valueCount), MathContext.DECIMAL64));
+            }
+        }
+    }
+
+    private BigDecimal toBigDecimal(Number value) {
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Integer || value instanceof Long) {
+            return BigDecimal.valueOf(value.longValue());
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    /**
+     * The rollup sums up all data of a dataset, so it must not answer queries filtering data by time or space.
+     */
+    private boolean hasDataFilters(DbQuery query) {
+        IoParameters parameters = query.getParameters();
+        return parameters.containsParameter(Parameters.TIMESPAN) || parameters.containsParameter(Parameters.BBOX)
+                || parameters.containsParameter(Parameters.NEAR);
     }
 
-    private boolean checkNumerical(DatasetEntity dataset) {
-        return ValueType.quantity.equals(dataset.getValueType()) || ValueType.count.equals(dataset.getValueType());
+    private boolean checkNumerical(DatasetDescriptor dataset) {
+        return ValueType.quantity.name().equals(dataset.getValueType())
+                || ValueType.count.name().equals(dataset.getValueType());
     }
 
 }
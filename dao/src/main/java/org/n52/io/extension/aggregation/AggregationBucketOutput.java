@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.extension.aggregation;
+
+import java.math.BigDecimal;
+
+import org.n52.io.response.TimeOutput;
+
+/**
+ * Aggregated values of a single time bucket.
+ */
+public class AggregationBucketOutput {
+
+    private TimeOutput timestart;
+
+    private TimeOutput timeend;
+
+    private long count;
+
+    private BigDecimal min;
+
+    private BigDecimal max;
+
+    private BigDecimal avg;
+
+    private BigDecimal sum;
+
+    private BigDecimal first;
+
+    private BigDecimal last;
+
+    public TimeOutput getTimestart() {
+        return timestart;
+    }
+
+    public void setTimestart(TimeOutput timestart) {
+        this.timestart = timestart;
+    }
+
+    public TimeOutput getTimeend() {
+        return timeend;
+    }
+
+    public void setTimeend(TimeOutput timeend) {
+        this.timeend = timeend;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public BigDecimal getMin() {
+        return min;
+    }
+
+    public void setMin(BigDecimal min) {
+        this.min = min;
+    }
+
+    public BigDecimal getMax() {
+        return max;
+    }
+
+    public void setMax(BigDecimal max) {
+        this.max = max;
+    }
+
+    public BigDecimal getAvg() {
+        return avg;
+    }
+
+    public void setAvg(BigDecimal avg) {
+        this.avg = avg;
+    }
+
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    public void setSum(BigDecimal sum) {
+        this.sum = sum;
+    }
+
+    public BigDecimal getFirst() {
+        return first;
+    }
+
+    public void setFirst(BigDecimal first) {
+        this.first = first;
+    }
+
+    public BigDecimal getLast() {
+        return last;
+    }
+
+    public void setLast(BigDecimal last) {
+        this.last = last;
+    }
+
+}
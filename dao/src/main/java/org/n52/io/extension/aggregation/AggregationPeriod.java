@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.extension.aggregation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.n52.web.exception.BadRequestException;
+
+/**
+ * The period of time buckets data gets aggregated into. Besides ISO 8601 periods like {@code PT15M} or
+ * {@code P1W} the aliases {@code hourly}, {@code daily}, {@code weekly}, {@code monthly} and {@code yearly}
+ * are supported.
+ * <p>
+ * The database groups values by the calendar fields down to the finest unit of the period, e.g. by year,
+ * month, day, hour and minute for {@code PT15M}. Buckets start at the beginning of the requested timespan
+ * truncated to that unit, so that each database group falls into exactly one bucket. Periods of weeks, which
+ * are grouped by day, are truncated to the start of the ISO week, i.e. Monday. As calendar fields are
+ * extracted from the stored timestamps, truncation has to use the zone the timestamps are stored in.
+ */
+final class AggregationPeriod {
+
+    private static final List<String> CALENDAR_FIELDS = Arrays.asList("year", "month", "day", "hour", "minute",
+            "second");
+
+    private static final Map<String, Period> ALIASES = new HashMap<>();
+
+    static {
+        ALIASES.put("hourly", Period.hours(1));
+        ALIASES.put("daily", Period.days(1));
+        ALIASES.put("weekly", Period.weeks(1));
+        ALIASES.put("monthly", Period.months(1));
+        ALIASES.put("yearly", Period.years(1));
+    }
+
+    private final Period period;
+
+    private final int precision;
+
+    private AggregationPeriod(Period period) {
+        this.period = period;
+        this.precision = getPrecision(period);
+    }
+
+    /**
+     * @param value
+     *            an alias or an ISO 8601 period
+     * @return the aggregation period
+     * @throws BadRequestException
+     *             if the value is no valid period, has a millisecond part or is not positive
+     */
+    static AggregationPeriod parse(String value) {
+        Period period = ALIASES.get(value.toLowerCase(Locale.ROOT));
+        if (period == null) {
+            try {
+                period = Period.parse(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid aggregation period: " + value, e);
+            }
+        }
+        if (period.getMillis() != 0 || !isPositive(period)) {
+            throw new BadRequestException("Invalid aggregation period: " + value);
+        }
+        return new AggregationPeriod(period);
+    }
+
+    private static boolean isPositive(Period period) {
+        for (int value : period.getValues()) {
+            if (value < 0) {
+                return false;
+            }
+        }
+        return !Period.ZERO.equals(period);
+    }
+
+    private static int getPrecision(Period period) {
+        if (period.getSeconds() != 0) {
+            return 6;
+        } else if (period.getMinutes() != 0) {
+            return 5;
+        } else if (period.getHours() != 0) {
+            return 4;
+        } else if (period.getDays() != 0 || period.getWeeks() != 0) {
+            return 3;
+        } else if (period.getMonths() != 0) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * @return the functions extracting the calendar fields the database has to group by
+     */
+    List<String> getCalendarFields() {
+        return Collections.unmodifiableList(CALENDAR_FIELDS.subList(0, precision));
+    }
+
+    /**
+     * @param timespanStart
+     *            the start of the requested timespan
+     * @param zone
+     *            the zone the database extracts calendar fields in
+     * @return the start of the first bucket
+     */
+    DateTime getFirstBucketStart(DateTime timespanStart, DateTimeZone zone) {
+        DateTime start = timespanStart.withZone(zone);
+        switch (precision) {
+            case 1:
+                return start.year().roundFloorCopy();
+            case 2:
+                return start.monthOfYear().roundFloorCopy();
+            case 3:
+                return isWeekly()
+                        ? start.weekOfWeekyear().roundFloorCopy()
+                        : start.dayOfMonth().roundFloorCopy();
+            case 4:
+                return start.hourOfDay().roundFloorCopy();
+            case 5:
+                return start.minuteOfHour().roundFloorCopy();
+            default:
+                return start.secondOfMinute().roundFloorCopy();
+        }
+    }
+
+    private boolean isWeekly() {
+        return period.getWeeks() != 0 && period.getMonths() == 0 && period.getYears() == 0;
+    }
+
+    /**
+     * @param firstBucketStart
+     *            the start of the first bucket
+     * @param index
+     *            the index of the bucket
+     * @return the start of the bucket with the given index
+     */
+    DateTime getBucketStart(DateTime firstBucketStart, int index) {
+        return firstBucketStart.plus(period.multipliedBy(index));
+    }
+
+}
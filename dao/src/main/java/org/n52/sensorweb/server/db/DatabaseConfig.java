@@ -36,6 +36,7 @@ import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
 import org.hibernate.boot.model.TypeContributor;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.hibernate.jpa.boot.spi.TypeContributorList;
 import org.hibernate.type.BasicType;
@@ -55,6 +56,26 @@ public class DatabaseConfig {
     @Value("${database.jpa.persistence-location:classpath:META-INF/persistence.xml}")
     private String persistenceXmlLocation;
 
+    /**
+     * Default JDBC batch size of sessions, overridden by {@code spring.jpa.properties.hibernate.jdbc.batch_size}.
+     * A size of {@literal 0} disables batching. Bulk data inserts use their own batch size, see
+     * {@code database.data.insert.batchSize}.
+     */
+    @Value("${database.jdbc.batchSize:50}")
+    private int jdbcBatchSize;
+
+    /**
+     * Orders inserts by entity type to batch them, overridden by {@code spring.jpa.properties.hibernate.order_inserts}.
+     */
+    @Value("${database.jdbc.orderInserts:true}")
+    private boolean jdbcOrderInserts;
+
+    /**
+     * Orders updates by entity type to batch them, overridden by {@code spring.jpa.properties.hibernate.order_updates}.
+     */
+    @Value("${database.jdbc.orderUpdates:true}")
+    private boolean jdbcOrderUpdates;
+
     @Bean
     public DbQueryFactory dbQueryFactory(@Value("${database.srid:'EPSG:4326'}") String srid) {
         return new DefaultDbQueryFactory(srid);
@@ -75,6 +96,10 @@ public class DatabaseConfig {
     private Map<String, Object> addCustomTypes(JpaProperties jpaProperties) {
         Map<String, Object> properties = new HashMap<>(jpaProperties.getProperties());
         properties.put(EntityManagerFactoryBuilderImpl.TYPE_CONTRIBUTORS, createTypeContributorsList());
+        // statements get batched only if grouped by entity type
+        properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, Integer.toString(jdbcBatchSize));
+        properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, Boolean.toString(jdbcOrderInserts));
+        properties.putIfAbsent(AvailableSettings.ORDER_UPDATES, Boolean.toString(jdbcOrderUpdates));
         return properties;
     }
 
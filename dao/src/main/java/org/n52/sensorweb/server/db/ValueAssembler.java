@@ -27,7 +27,9 @@
  */
 package org.n52.sensorweb.server.db;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -52,6 +54,36 @@ public interface ValueAssembler<E extends DataEntity<T>, V extends AbstractValue
      */
     Data<V> getData(String id, DbQuery query);
 
+    /**
+     * Assembles observation values of multiple datasets as {@link Data} outputs. By default data is
+     * assembled for each dataset separately via {@link #getData(String, DbQuery)}.
+     *
+     * @param ids
+     *            the dataset ids
+     * @param query
+     *            the query
+     * @return the assembled data mapped by dataset id, in order of the given ids
+     */
+    default Map<String, Data<V>> getData(Collection<String> ids, DbQuery query) {
+        Map<String, Data<V>> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            result.put(id, getData(id, query));
+        }
+        return result;
+    }
+
+    /**
+     * Indicates if {@link #getData(Collection, DbQuery)} fetches data of multiple datasets at once for the
+     * given query, rather than dataset by dataset.
+     *
+     * @param query
+     *            the query
+     * @return if data of multiple datasets is fetched at once
+     */
+    default boolean isBatchRetrievalSupported(DbQuery query) {
+        return false;
+    }
+
     /**
      * Assembles a list of reference values.
      *
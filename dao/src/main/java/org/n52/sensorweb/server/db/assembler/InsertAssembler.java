@@ -27,6 +27,10 @@
  */
 package org.n52.sensorweb.server.db.assembler;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.n52.series.db.beans.DescribableEntity;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -45,6 +49,21 @@ public interface InsertAssembler<E extends DescribableEntity> extends Transactio
         return refresh(getParameterRepository().saveAndFlush(entity));
     }
 
+    /**
+     * Gets or inserts all given entities one by one via {@link #getOrInsertInstance(DescribableEntity)}.
+     * Implementations resolving entities together have to apply the same updates to found instances.
+     *
+     * @param entities
+     *            the entities to get or insert
+     * @return the persisted instances in order of the given entities
+     */
+    @Transactional
+    default List<E> getOrInsertInstances(Collection<E> entities) {
+        List<E> instances = new ArrayList<>(entities.size());
+        entities.forEach(entity -> instances.add(getOrInsertInstance(entity)));
+        return instances;
+    }
+
     default E getOrUpdateInstance(E instance, E entity) {
         if (entity.getId() == null) {
             entity.setId(instance.getId());
@@ -27,8 +27,21 @@
  */
 package org.n52.sensorweb.server.db.assembler;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.inject.Inject;
@@ -36,14 +49,16 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import org.n52.sensorweb.server.db.assembler.core.FormatAssembler;
+import org.n52.sensorweb.server.db.assembler.core.UnitAssembler;
 import org.n52.sensorweb.server.db.assembler.mapper.OutputMapperFactory;
+import org.n52.sensorweb.server.db.cache.EntityCountCache;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.query.DatasetQuerySpecifications;
 import org.n52.sensorweb.server.db.repositories.ParameterDataRepository;
-import org.n52.sensorweb.server.db.repositories.core.UnitRepository;
 import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.db.beans.FormatEntity;
 import org.n52.series.db.beans.HibernateRelations;
+import org.n52.series.db.beans.ServiceEntity;
 import org.n52.series.db.beans.UnitEntity;
 import org.n52.series.db.beans.parameter.ComplexParameterEntity;
 import org.n52.series.db.beans.parameter.ParameterEntity;
@@ -51,7 +66,9 @@ import org.n52.shetland.ogc.OGCConstants;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.util.StreamUtils;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraph;
 import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraphUtils;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -60,6 +77,8 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 public abstract class ParameterAssembler<E extends DescribableEntity>
         implements InsertAssembler<E>, ClearAssembler<E> {
 
+    protected static final String TRANSLATIONS = "translations";
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -69,12 +88,15 @@ public abstract class ParameterAssembler<E extends DescribableEntity>
     private final ParameterDataRepository<E> parameterRepository;
 
     @Inject
-    private UnitRepository unitRepository;
+    private UnitAssembler unitAssembler;
 
     @Lazy
     @Inject
     private OutputMapperFactory outputMapperFactory;
 
+    @Inject
+    private EntityCountCache entityCounts;
+
     public ParameterAssembler(final ParameterDataRepository<E> parameterRepository) {
         this.parameterRepository = parameterRepository;
     }
@@ -83,6 +105,7 @@ public abstract class ParameterAssembler<E extends DescribableEntity>
 
     public E refresh(E entity) {
         entityManager.refresh(entity);
+        entityCounts.invalidateAll();
         return entity;
     }
 
@@ -100,43 +123,251 @@ public abstract class ParameterAssembler<E extends DescribableEntity>
     }
 
     public Stream<E> findAll(final DbQuery query) {
-        return findAll(createFilterPredicate(query));
+        return findAll(createFilterPredicate(query), createEntityGraph(query));
     }
 
     protected Stream<E> findAll(Specification<E> predicate) {
-        final Iterable<E> entities =
-                parameterRepository.findAll(predicate, EntityGraphUtils.fromAttributePaths("translations"));
+        return findAll(predicate, EntityGraphUtils.fromAttributePaths(TRANSLATIONS));
+    }
+
+    protected Stream<E> findAll(Specification<E> predicate, EntityGraph entityGraph) {
+        final Iterable<E> entities = parameterRepository.findAll(predicate, entityGraph);
         return StreamUtils.createStreamFromIterator(entities.iterator());
     }
 
+    /**
+     * Creates the entity graph of associations fetched together with the entities found for the given query.
+     * Subclasses may add associations their output mapper reads, so that mapping a listing does not issue a
+     * query per entity and association. By default only translations are fetched.
+     *
+     * @param query
+     *            the query
+     * @return the entity graph to fetch
+     */
+    protected EntityGraph createEntityGraph(DbQuery query) {
+        return EntityGraphUtils.fromAttributePaths(TRANSLATIONS);
+    }
+
+    /**
+     * Gets or inserts all given entities. Persisted instances are looked up with one
+     * <code>identifier IN (...)</code> query per chunk of identifiers instead of one query per entity and matched
+     * like {@link ParameterDataRepository#getInstance(DescribableEntity)} does, see
+     * {@link ParameterDataRepository#isInstance(DescribableEntity, DescribableEntity)}. The missing ones are
+     * inserted together and flushed once, given entities matching the same missing entity get inserted once.
+     * Entities with a database id, without an identifier or which are not
+     * {@link #isBulkInsertable(DescribableEntity) bulk insertable} are resolved one by one via
+     * {@link #getOrInsertInstance(DescribableEntity)}.
+     *
+     * @param entities
+     *            the entities to get or insert
+     * @return the persisted instances in order of the given entities
+     */
+    @Override
+    @Transactional
+    public List<E> getOrInsertInstances(Collection<E> entities) {
+        // entities get compared by reference, as unsaved entities may be equal to each other
+        Map<E, E> instances = new IdentityHashMap<>();
+        Map<String, List<E>> lookups = new LinkedHashMap<>();
+        for (E entity : entities) {
+            if (entity.getId() != null || !entity.isSetIdentifier()) {
+                instances.put(entity, getOrInsertInstance(entity));
+            } else {
+                lookups.computeIfAbsent(entity.getIdentifier(), k -> new ArrayList<>()).add(entity);
+            }
+        }
+        if (!lookups.isEmpty()) {
+            getOrInsertByIdentifier(lookups, instances);
+        }
+        List<E> resolved = new ArrayList<>(entities.size());
+        entities.forEach(entity -> resolved.add(instances.get(entity)));
+        return resolved;
+    }
+
+    private void getOrInsertByIdentifier(Map<String, List<E>> lookups, Map<E, E> instances) {
+        Map<String, List<E>> persisted = new HashMap<>();
+        for (E instance : getParameterRepository().findAllByIdentifier(lookups.keySet())) {
+            persisted.computeIfAbsent(instance.getIdentifier(), k -> new ArrayList<>()).add(instance);
+        }
+        // each group of missing entities gets inserted once, via its first entity
+        List<List<E>> missing = new ArrayList<>();
+        List<List<E>> nonBulkInsertable = new ArrayList<>();
+        lookups.forEach((identifier, entities) -> {
+            List<E> candidates = persisted.getOrDefault(identifier, Collections.emptyList());
+            List<List<E>> groups = new ArrayList<>();
+            for (E entity : entities) {
+                Optional<E> instance = findInstance(candidates, entity);
+                if (instance.isPresent()) {
+                    instances.put(entity, instance.get());
+                    continue;
+                }
+                Optional<List<E>> group = groups.stream().filter(it -> isInstance(it.get(0), entity)).findFirst();
+                if (group.isPresent()) {
+                    group.get().add(entity);
+                } else {
+                    List<E> added = new ArrayList<>(Collections.singletonList(entity));
+                    groups.add(added);
+                    (isBulkInsertable(entity) ? missing : nonBulkInsertable).add(added);
+                }
+            }
+        });
+        List<E> inserted = insertInstances(missing.stream().map(it -> it.get(0)).collect(Collectors.toList()));
+        for (int i = 0; i < inserted.size(); i++) {
+            E instance = inserted.get(i);
+            missing.get(i).forEach(entity -> instances.put(entity, instance));
+        }
+        // resolved afterwards, so that parents inserted above are found
+        for (List<E> group : nonBulkInsertable) {
+            E instance = getOrInsertInstance(group.get(0));
+            group.forEach(entity -> instances.put(entity, instance));
+        }
+    }
+
+    private Optional<E> findInstance(List<E> candidates, E entity) {
+        return candidates.stream().filter(candidate -> isInstance(candidate, entity)).findFirst();
+    }
+
+    private boolean isInstance(E instance, E entity) {
+        return getParameterRepository().isInstance(instance, entity);
+    }
+
+    /**
+     * Checks if an entity can be inserted together with others by {@link #insertInstances(List)}. Entities
+     * referencing entities of the same type, e.g. parents, have to be inserted one by one.
+     *
+     * @param entity
+     *            the entity to insert
+     * @return <code>true</code> if the entity can be inserted with others
+     */
+    protected boolean isBulkInsertable(E entity) {
+        return true;
+    }
+
+    /**
+     * Inserts the given entities and flushes them once. Unlike {@link #getOrInsertInstance(DescribableEntity)}
+     * the inserted entities are not refreshed.
+     *
+     * @param entities
+     *            the entities to insert
+     * @return the inserted entities
+     */
+    protected List<E> insertInstances(List<E> entities) {
+        if (entities.isEmpty()) {
+            return entities;
+        }
+        for (E entity : entities) {
+            checkParameter(entity);
+            checkReferencedEntities(entity);
+        }
+        List<E> inserted = getParameterRepository().saveAll(entities);
+        getParameterRepository().flush();
+        entityCounts.invalidateAll();
+        return inserted;
+    }
+
+    @Override
+    public void clearUnusedForService(ServiceEntity service) {
+        ClearAssembler.super.clearUnusedForService(service);
+        entityCounts.invalidateAll();
+    }
+
     @Override
     public E checkParameter(E entity) {
         if (entity.hasParameters()) {
-            Set<ParameterEntity<?>> newParams = new LinkedHashSet<>();
-            for (ParameterEntity<?> parameter : entity.getParameters()) {
-                checkParameter(entity, parameter, newParams);
-            }
+            Set<ParameterEntity<?>> newParams = flattenParameters(entity.getParameters());
+            checkUnits(newParams);
             entity.setParameters(newParams);
         }
         return entity;
     }
 
-    public void checkParameter(E entity, ParameterEntity<?> parameter, Set<ParameterEntity<?>> newParams) {
-        if (parameter instanceof ComplexParameterEntity && parameter.getValue() != null) {
-            ComplexParameterEntity<?> complex = (ComplexParameterEntity<?>) parameter;
-            for (Object v : (Set<?>) complex.getValue()) {
-                if (v instanceof ParameterEntity) {
-                    ParameterEntity<?> child = (ParameterEntity<?>) v;
-                    checkParameter(entity, child, newParams);
-                    child.setParent((ParameterEntity<?>) complex);
+    /**
+     * Flattens parameter trees iteratively, depth first: children precede their complex parameter, get it set as
+     * parent and the value of the complex parameter is cleared.
+     *
+     * @param parameters
+     *            the parameters, possibly complex ones
+     * @return the flattened parameters
+     */
+    protected Set<ParameterEntity<?>> flattenParameters(Collection<ParameterEntity<?>> parameters) {
+        Set<ParameterEntity<?>> flattened = new LinkedHashSet<>();
+        Deque<ParameterEntity<?>> path = new ArrayDeque<>();
+        Deque<Iterator<?>> children = new ArrayDeque<>();
+        for (ParameterEntity<?> parameter : parameters) {
+            path.push(parameter);
+            children.push(getChildren(parameter));
+            while (!path.isEmpty()) {
+                Iterator<?> next = children.peek();
+                if (next.hasNext()) {
+                    Object child = next.next();
+                    if (child instanceof ParameterEntity) {
+                        path.push((ParameterEntity<?>) child);
+                        children.push(getChildren((ParameterEntity<?>) child));
+                    }
+                } else {
+                    children.pop();
+                    ParameterEntity<?> visited = path.pop();
+                    if (visited instanceof ComplexParameterEntity && visited.getValue() != null) {
+                        ((ComplexParameterEntity<?>) visited).setValue(null);
+                    }
+                    flattened.add(visited);
+                    if (!path.isEmpty()) {
+                        visited.setParent(path.peek());
+                    }
+                }
+            }
+        }
+        return flattened;
+    }
+
+    private Iterator<?> getChildren(ParameterEntity<?> parameter) {
+        return parameter instanceof ComplexParameterEntity && parameter.getValue() != null
+                ? ((Set<?>) parameter.getValue()).iterator()
+                : Collections.emptyIterator();
+    }
+
+    /**
+     * Sets the persisted units of the given parameters like {@link #getOrInsertUnit(UnitEntity)} does, but resolves
+     * all distinct units together.
+     *
+     * @param parameters
+     *            the flattened parameters
+     */
+    protected void checkUnits(Collection<ParameterEntity<?>> parameters) {
+        Map<String, UnitEntity> units = new LinkedHashMap<>();
+        for (ParameterEntity<?> parameter : parameters) {
+            if (parameter instanceof HibernateRelations.HasUnit) {
+                UnitEntity unit = ((HibernateRelations.HasUnit) parameter).getUnit();
+                if (unit != null && unit.isSetIdentifier()) {
+                    units.putIfAbsent(unit.getIdentifier(), unit);
                 }
             }
-            complex.setValue(null);
         }
-        newParams.add(parameter);
-        checkUnit(parameter);
+        Map<String, UnitEntity> instances =
+                units.isEmpty() ? Collections.emptyMap() : unitAssembler.getOrInsertInstances(units.values());
+        for (ParameterEntity<?> parameter : parameters) {
+            if (parameter instanceof HibernateRelations.HasUnit) {
+                HibernateRelations.HasUnit hasUnit = (HibernateRelations.HasUnit) parameter;
+                UnitEntity unit = hasUnit.getUnit();
+                hasUnit.setUnit(unit != null && unit.isSetIdentifier() ? instances.get(unit.getIdentifier()) : null);
+            }
+        }
+    }
+
+    /**
+     * @deprecated use {@link #flattenParameters(Collection)} and {@link #checkUnits(Collection)}, which do not
+     *             recurse and resolve all units together
+     */
+    @Deprecated
+    public void checkParameter(E entity, ParameterEntity<?> parameter, Set<ParameterEntity<?>> newParams) {
+        Set<ParameterEntity<?>> flattened = flattenParameters(Collections.singleton(parameter));
+        newParams.addAll(flattened);
+        flattened.forEach(this::checkUnit);
     }
 
+    /**
+     * @deprecated use {@link #checkUnits(Collection)}, which resolves all units together
+     */
+    @Deprecated
     protected void checkUnit(ParameterEntity<?> parameter) {
         if (parameter instanceof HibernateRelations.HasUnit) {
             UnitEntity unit = ((HibernateRelations.HasUnit) parameter).getUnit();
@@ -146,11 +377,7 @@ public abstract class ParameterAssembler<E extends DescribableEntity>
 
     public UnitEntity getOrInsertUnit(UnitEntity unit) {
         if (unit != null && unit.isSetIdentifier()) {
-            UnitEntity instance = unitRepository.getInstance(unit);
-            if (instance != null) {
-                return instance;
-            }
-            return unitRepository.saveAndFlush(unit);
+            return unitAssembler.getOrInsertInstance(unit);
         }
         return null;
     }
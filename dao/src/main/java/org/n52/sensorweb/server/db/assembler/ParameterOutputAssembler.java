@@ -30,6 +30,7 @@ package org.n52.sensorweb.server.db.assembler;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -38,6 +39,7 @@ import javax.inject.Inject;
 import org.n52.io.response.AbstractOutput;
 import org.n52.sensorweb.server.db.assembler.mapper.OutputMapperFactory;
 import org.n52.sensorweb.server.db.assembler.mapper.ParameterOutputSearchResultMapper;
+import org.n52.sensorweb.server.db.cache.SearchIndex;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.repositories.ParameterDataRepository;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
@@ -45,6 +47,7 @@ import org.n52.sensorweb.server.srv.OutputAssembler;
 import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.spi.search.SearchResult;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.data.jpa.domain.Specification;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -58,10 +61,15 @@ public abstract class ParameterOutputAssembler<E extends DescribableEntity,
 
     private final DatasetRepository datasetRepository;
 
+    private final Class<E> entityType = resolveEntityType();
+
     @Lazy
     @Inject
     private OutputMapperFactory outputMapperFactory;
 
+    @Inject
+    private SearchIndex searchIndex;
+
     public ParameterOutputAssembler(final ParameterDataRepository<E> parameterRepository,
             final DatasetRepository datasetRepository) {
        super(parameterRepository);
@@ -79,13 +87,15 @@ public abstract class ParameterOutputAssembler<E extends DescribableEntity,
 
     @Override
     public List<O> getAllCondensed(final DbQuery query) {
-        return findAll(query).parallel().map(it -> getMapper(query).createCondensed(it, prepareEmptyOutput()))
+        ParameterOutputSearchResultMapper<E, O> mapper = getMapper(query);
+        return findAll(query).parallel().map(it -> mapper.createCondensed(it, prepareEmptyOutput()))
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<O> getAllExpanded(final DbQuery query) {
-        return findAll(query).parallel().map(it -> getMapper(query).createExpanded(it, prepareEmptyOutput()))
+        ParameterOutputSearchResultMapper<E, O> mapper = getMapper(query);
+        return findAll(query).parallel().map(it -> mapper.createExpanded(it, prepareEmptyOutput()))
                 .collect(Collectors.toList());
     }
 
@@ -98,12 +108,54 @@ public abstract class ParameterOutputAssembler<E extends DescribableEntity,
 
     @Override
     public Collection<SearchResult> searchFor(final DbQuery query) {
-        return findAllSearch(query).map(it -> getMapper(query).createSearchResult(it, prepareEmptySearchResult()))
+        ParameterOutputSearchResultMapper<E, O> mapper = getMapper(query);
+        return findAllSearch(query).map(it -> mapper.createSearchResult(it, prepareEmptySearchResult()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Finds all entities matching the search term of the given query. If the {@link SearchIndex} knows the
+     * candidates matching the term, the search filter gets applied to those candidates only.
+     *
+     * @param query
+     *            the query
+     * @return the matching entities
+     */
     public Stream<E> findAllSearch(final DbQuery query) {
-        return findAll(createSearchFilterPredicate(query));
+        Specification<E> searchFilter = createSearchFilterPredicate(query);
+        Set<Long> candidates = searchIndex != null ? searchIndex.find(entityType, query.getSearchTerm()) : null;
+        if (candidates == null) {
+            return findAll(searchFilter);
+        }
+        return candidates.isEmpty()
+                ? Stream.empty()
+                : findAll(Specification.where(searchFilter).and(matchIds(candidates)));
+    }
+
+    @Override
+    public E refresh(E entity) {
+        E refreshed = super.refresh(entity);
+        addToSearchIndex(refreshed);
+        return refreshed;
+    }
+
+    @Override
+    protected List<E> insertInstances(List<E> entities) {
+        List<E> inserted = super.insertInstances(entities);
+        inserted.forEach(this::addToSearchIndex);
+        return inserted;
+    }
+
+    /**
+     * Adds an entity inserted without {@link #refresh(DescribableEntity)} to the {@link SearchIndex}.
+     *
+     * @param entity
+     *            the inserted or updated entity
+     */
+    protected void addToSearchIndex(E entity) {
+        if (searchIndex != null) {
+            searchIndex.add(entityType, entity);
+        }
     }
 
     @Override
@@ -120,6 +172,26 @@ public abstract class ParameterOutputAssembler<E extends DescribableEntity,
         return outputMapperFactory;
     }
 
+    /**
+     * Creates the mapper for the given query. Mappers are thread-safe, so one instance gets shared by all
+     * entities of a request.
+     *
+     * @param query
+     *            the query
+     * @return the mapper
+     */
     protected abstract ParameterOutputSearchResultMapper<E, O> getMapper(DbQuery query);
 
+    private static <T extends DescribableEntity> Specification<T> matchIds(Set<Long> ids) {
+        return (root, query, builder) -> root.get(DescribableEntity.PROPERTY_ID).in(ids);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<E> resolveEntityType() {
+        Class<?>[] types = GenericTypeResolver.resolveTypeArguments(getClass(), ParameterOutputAssembler.class);
+        boolean entity = types != null && types[0] != DescribableEntity.class
+                && DescribableEntity.class.isAssignableFrom(types[0]);
+        return entity ? (Class<E>) types[0] : null;
+    }
+
 }
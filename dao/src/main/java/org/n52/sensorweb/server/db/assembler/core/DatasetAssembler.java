@@ -27,37 +27,64 @@
  */
 package org.n52.sensorweb.server.db.assembler.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
 
 import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
+import org.n52.io.response.ParameterOutput;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.DatasetOutput;
 import org.n52.io.response.dataset.DatasetParameters;
 import org.n52.io.response.dataset.DatasetTypesMetadata;
 import org.n52.sensorweb.server.db.assembler.ParameterOutputAssembler;
+import org.n52.sensorweb.server.db.assembler.mapper.DatasetOutputMapper;
 import org.n52.sensorweb.server.db.assembler.mapper.ParameterOutputSearchResultMapper;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptor;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptorCache;
+import org.n52.sensorweb.server.db.cache.EntityCountCache;
+import org.n52.sensorweb.server.db.cache.LatestValueCache;
 import org.n52.sensorweb.server.db.factory.DataRepositoryTypeFactory;
 import org.n52.sensorweb.server.db.factory.ServiceEntityFactory;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
 import org.n52.sensorweb.server.db.query.DatasetQuerySpecifications;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
+import org.n52.sensorweb.server.db.statistics.DatasetStatisticsRollup;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.spi.search.DatasetSearchResult;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.util.StreamUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraph;
+import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraphUtils;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -66,22 +93,42 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 public class DatasetAssembler<V extends AbstractValue<?>>
     extends ParameterOutputAssembler<DatasetEntity, DatasetOutput<V>, DatasetSearchResult> {
 
+    static final String COALESCE_UPDATES_KEY = "database.datasets.coalesceUpdates";
+
     private final DataRepositoryTypeFactory dataRepositoryFactory;
     private final DbQueryFactory dbQueryFactory;
     private final ServiceEntityFactory serviceFactory;
+    private final DatasetStatisticsRollup statisticsRollup;
+    private final DatasetDescriptorCache datasetDescriptors;
+    private final LatestValueCache latestValues;
+    private final EntityCountCache entityCounts;
     @PersistenceContext
     private EntityManager entityManager;
 
+    /**
+     * If first and last value updates of datasets are collected per transaction and written once at commit.
+     */
+    @Value("${" + COALESCE_UPDATES_KEY + ":false}")
+    private boolean coalesceUpdates;
+
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
     public DatasetAssembler(DatasetRepository parameterRepository,
                             DatasetRepository datasetRepository,
                             DataRepositoryTypeFactory dataRepositoryFactory,
                             DbQueryFactory dbQueryFactory,
-                            ServiceEntityFactory serviceFactory) {
+                            ServiceEntityFactory serviceFactory,
+                            DatasetStatisticsRollup statisticsRollup,
+                            DatasetDescriptorCache datasetDescriptors,
+                            LatestValueCache latestValues,
+                            EntityCountCache entityCounts) {
         super(parameterRepository, datasetRepository);
         this.dataRepositoryFactory = dataRepositoryFactory;
         this.dbQueryFactory = dbQueryFactory;
         this.serviceFactory = serviceFactory;
+        this.statisticsRollup = statisticsRollup;
+        this.datasetDescriptors = datasetDescriptors;
+        this.latestValues = latestValues;
+        this.entityCounts = entityCounts;
     }
 
     @Override
@@ -114,7 +161,8 @@ public class DatasetAssembler<V extends AbstractValue<?>>
 
     @Override
     public List<DatasetOutput<V>> getAllExpanded(final DbQuery query) {
-        return findAll(query).map(entity -> createExpanded(entity, query)).collect(Collectors.toList());
+        ParameterOutputSearchResultMapper<DatasetEntity, DatasetOutput<V>> mapper = getMapper(query);
+        return findAll(query).map(entity -> createExpanded(entity, mapper)).collect(Collectors.toList());
     }
 
     @Override
@@ -130,8 +178,7 @@ public class DatasetAssembler<V extends AbstractValue<?>>
             DatasetQuerySpecifications dsFilterSpec = DatasetQuerySpecifications.of(query, entityManager);
             Specification<DatasetEntity> predicate =
                     dsFilterSpec.matchFilters().and(dsFilterSpec.matchIds(query.getParameters().getDatasets()));
-            final Iterable<DatasetEntity> entities = getParameterRepository().findAll(predicate);
-            return StreamUtils.createStreamFromIterator(entities.iterator());
+            return findAll(predicate, createEntityGraph(query));
         }
         DbQuery queryWithValueTypes;
         if (query.isSetValueTypeFilter()) {
@@ -145,13 +192,80 @@ public class DatasetAssembler<V extends AbstractValue<?>>
         return super.findAll(queryWithValueTypes);
     }
 
+    /**
+     * Fetches the associations the {@link DatasetOutputMapper} reads for the selected output, so that a listing
+     * costs a constant number of queries instead of one per dataset and association. Collections are left to
+     * batch fetching, as joining several of them would multiply the result rows.
+     */
+    @Override
+    protected EntityGraph createEntityGraph(DbQuery query) {
+        IoParameters parameters = query.getParameters();
+        Set<String> attributePaths = new LinkedHashSet<>();
+        attributePaths.add(TRANSLATIONS);
+        if (parameters.isSelected(ParameterOutput.LABEL)) {
+            // label falls back to phenomenon, procedure, offering and feature
+            attributePaths.add(DatasetEntity.PROPERTY_PHENOMENON);
+            attributePaths.add(DatasetEntity.PROPERTY_PROCEDURE);
+            attributePaths.add(DatasetEntity.PROPERTY_OFFERING);
+            attributePaths.add(DatasetEntity.PROPERTY_FEATURE);
+        }
+        if (parameters.isSelected(DatasetOutput.FEATURE)) {
+            attributePaths.add(DatasetEntity.PROPERTY_FEATURE);
+        }
+        if (parameters.isSelected(DatasetOutput.UOM)) {
+            attributePaths.add(DatasetEntity.PROPERTY_UNIT);
+        }
+        if (query.isExpanded() && parameters.isSelected(DatasetOutput.DATASET_PARAMETERS)) {
+            attributePaths.add(DatasetEntity.PROPERTY_SERVICE);
+            attributePaths.add(DatasetEntity.PROPERTY_OFFERING);
+            attributePaths.add(DatasetEntity.PROPERTY_PROCEDURE);
+            attributePaths.add(DatasetEntity.PROPERTY_PHENOMENON);
+            attributePaths.add(DatasetEntity.PROPERTY_CATEGORY);
+            attributePaths.add(DatasetEntity.PROPERTY_PLATFORM);
+        }
+        return EntityGraphUtils.fromAttributePaths(attributePaths.toArray(new String[0]));
+    }
+
+    /**
+     * Counts the datasets matching the query grouped by dataset, observation and value type.
+     *
+     * @param query
+     *            the query
+     * @return the counts by the list of dataset, observation and value type
+     */
+    public Map<List<String>, Long> countByTypes(DbQuery query) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = builder.createTupleQuery();
+        Root<DatasetEntity> root = criteria.from(DatasetEntity.class);
+        Path<Object> datasetType = root.get(DatasetEntity.PROPERTY_DATASET_TYPE);
+        Path<Object> observationType = root.get(DatasetEntity.PROPERTY_OBSERVATION_TYPE);
+        Path<Object> valueType = root.get(DatasetEntity.PROPERTY_VALUE_TYPE);
+        criteria.multiselect(datasetType, observationType, valueType, builder.count(root))
+                .where(createFilterPredicate(query).toPredicate(root, criteria, builder))
+                .groupBy(datasetType, observationType, valueType);
+        Map<List<String>, Long> counts = new LinkedHashMap<>();
+        for (Tuple row : entityManager.createQuery(criteria).getResultList()) {
+            List<String> types = Arrays.asList(getName(row.get(0)), getName(row.get(1)), getName(row.get(2)));
+            counts.put(types, row.get(3, Long.class));
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private String getName(Object type) {
+        return type instanceof Enum ? ((Enum<?>) type).name() : Objects.toString(type, null);
+    }
+
     @Override
     protected ParameterOutputSearchResultMapper<DatasetEntity, DatasetOutput<V>> getMapper(DbQuery query) {
         return getOutputMapperFactory().getDatasetMapper(query);
     }
 
     protected DatasetOutput<V> createExpanded(DatasetEntity entity, DbQuery query) {
-        ParameterOutputSearchResultMapper<DatasetEntity, DatasetOutput<V>> mapper = getMapper(query);
+        return createExpanded(entity, getMapper(query));
+    }
+
+    private DatasetOutput<V> createExpanded(DatasetEntity entity,
+                                            ParameterOutputSearchResultMapper<DatasetEntity, DatasetOutput<V>> mapper) {
         DatasetOutput<V> result = mapper.createCondensed(entity);
         mapper.addExpandedValues(entity, result);
         return result;
@@ -193,15 +307,60 @@ public class DatasetAssembler<V extends AbstractValue<?>>
         }
         Optional<DatasetEntity> instance = getParameterRepository().findOne(specification);
         return !instance.isPresent() ? insert(dataset)
-            : update(instance.get(), dataset);
+            : update(instance.get(), dataset, false);
+    }
+
+    @Override
+    @Transactional
+    public List<DatasetEntity> getOrInsertInstances(Collection<DatasetEntity> datasets) {
+        // datasets are not identified by their identifier but by their referenced parameters
+        List<DatasetEntity> instances = new ArrayList<>(datasets.size());
+        for (DatasetEntity dataset : datasets) {
+            instances.add(getOrInsertInstance(dataset));
+        }
+        return instances;
     }
 
     private DatasetEntity insert(DatasetEntity dataset) {
         dataset.setOMObservationType(getFormat(dataset.getOMObservationType()));
-        return getParameterRepository().saveAndFlush(dataset);
+        DatasetEntity inserted = getParameterRepository().saveAndFlush(dataset);
+        datasetDescriptors.invalidate(inserted.getId());
+        cacheLatestValues(inserted, true, true);
+        entityCounts.invalidateAll();
+        addToSearchIndex(inserted);
+        return inserted;
+    }
+
+    /**
+     * Extends the first and last values of a dataset by the first and last values of the given dataset, e.g.
+     * after inserting data.
+     *
+     * @param instance
+     *            the persisted dataset
+     * @param values
+     *            a dataset holding the first and last values to apply
+     * @return the updated dataset
+     */
+    public DatasetEntity updateFirstLastValues(DatasetEntity instance, DatasetEntity values) {
+        return update(instance, values, true);
+    }
+
+    /**
+     * Extends the first and last values of a dataset. If updates are coalesced, see
+     * {@value #COALESCE_UPDATES_KEY}, and a transaction is active, the values are collected and written once
+     * when the transaction commits. This keeps the dataset row unlocked while data of the dataset gets loaded.
+     * Until then, the returned instance still holds its previous first and last values. The statistics rollup
+     * is refreshed only if data has been inserted.
+     */
+    private DatasetEntity update(DatasetEntity instance, DatasetEntity dataset, boolean dataInserted) {
+        if (coalesceUpdates && !instance.isDeleted() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            getPendingUpdates().add(instance.getId(), dataset, dataInserted);
+            return instance;
+        }
+        return applyUpdate(instance, dataset, dataInserted);
     }
 
-    private DatasetEntity update(DatasetEntity instance, DatasetEntity dataset) {
+    private DatasetEntity applyUpdate(DatasetEntity instance, DatasetEntity dataset, boolean dataInserted) {
         boolean minChanged = false;
         boolean maxChanged = false;
         if (!instance.isSetFirstValueAt() || instance.isSetFirstValueAt() && dataset.isSetFirstValueAt()
@@ -218,11 +377,100 @@ public class DatasetAssembler<V extends AbstractValue<?>>
             instance.setLastObservation(dataset.getLastObservation());
             instance.setLastQuantityValue(dataset.getLastQuantityValue());
         }
+        DatasetEntity updated = instance;
         if (instance.isDeleted() && !dataset.isDeleted() || minChanged || maxChanged) {
+            if (instance.isDeleted()) {
+                entityCounts.invalidateAll();
+            }
             instance.setDeleted(false);
-            return getParameterRepository().saveAndFlush(instance);
+            updated = getParameterRepository().saveAndFlush(instance);
+            datasetDescriptors.invalidate(updated.getId());
+            cacheLatestValues(updated, minChanged, maxChanged);
+        }
+        if (dataInserted) {
+            refreshStatistics(updated, dataset);
+        }
+        return updated;
+    }
+
+    private PendingUpdates getPendingUpdates() {
+        PendingUpdates pending = (PendingUpdates) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingUpdates();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    /**
+     * First and last values of datasets collected during a transaction. Datasets are written in order of their
+     * ids, so that concurrent transactions lock dataset rows in the same order.
+     */
+    private final class PendingUpdates implements TransactionSynchronization {
+
+        private final Map<Long, DatasetEntity> values = new TreeMap<>();
+
+        private final Set<Long> dataInserted = new HashSet<>();
+
+        void add(Long id, DatasetEntity dataset, boolean inserted) {
+            if (inserted) {
+                dataInserted.add(id);
+            }
+            DatasetEntity pending = values.computeIfAbsent(id, k -> new DatasetEntity());
+            if (dataset.isSetFirstValueAt() && (!pending.isSetFirstValueAt()
+                    || pending.getFirstValueAt().after(dataset.getFirstValueAt()))) {
+                pending.setFirstValueAt(dataset.getFirstValueAt());
+                pending.setFirstObservation(dataset.getFirstObservation());
+                pending.setFirstQuantityValue(dataset.getFirstQuantityValue());
+            }
+            if (dataset.isSetLastValueAt() && (!pending.isSetLastValueAt()
+                    || pending.getLastValueAt().before(dataset.getLastValueAt()))) {
+                pending.setLastValueAt(dataset.getLastValueAt());
+                pending.setLastObservation(dataset.getLastObservation());
+                pending.setLastQuantityValue(dataset.getLastQuantityValue());
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            values.forEach((id, dataset) -> {
+                DatasetEntity instance = entityManager.find(DatasetEntity.class, id);
+                if (instance != null) {
+                    applyUpdate(instance, dataset, dataInserted.contains(id));
+                }
+            });
+            values.clear();
+            dataInserted.clear();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(DatasetAssembler.this);
+        }
+    }
+
+    private void cacheLatestValues(DatasetEntity dataset, boolean minChanged, boolean maxChanged) {
+        if (minChanged && dataset.getFirstObservation() != null) {
+            latestValues.putFirst(dataset, dataset.getFirstObservation().getId());
+        }
+        if (maxChanged && dataset.getLastObservation() != null) {
+            latestValues.putLast(dataset, dataset.getLastObservation().getId());
+        }
+    }
+
+    /**
+     * Refreshes the statistics rollup for the time range of the given values, which covers all data inserted.
+     */
+    private void refreshStatistics(DatasetEntity dataset, DatasetEntity values) {
+        if (!statisticsRollup.isEnabled()) {
+            return;
+        }
+        Date from = values.isSetFirstValueAt() ? values.getFirstValueAt() : values.getLastValueAt();
+        Date to = values.isSetLastValueAt() ? values.getLastValueAt() : values.getFirstValueAt();
+        if (from != null && to != null) {
+            statisticsRollup.refresh(dataset, from, to);
         }
-        return instance;
     }
 
     private DatasetParameters createDatasetParameters(DatasetEntity dataset, DbQuery query,
@@ -257,19 +505,15 @@ public class DatasetAssembler<V extends AbstractValue<?>>
     }
 
     public List<DatasetTypesMetadata> getDatasetTypesMetadata(DbQuery dbQuery) {
-        Set<Object[]> metadataTypes =
-            getDatasetRepository().getMetadataTypes(dbQuery.getParameters()
-                                                        .getDatasets()
-                                                        .stream()
-                                                        .mapToLong(Long::parseLong)
-                                                        .boxed()
-                                                        .collect(Collectors.toSet()));
-        return metadataTypes.stream()
-            .map(o -> new DatasetTypesMetadata(o[0].toString(),
-                                               (String) o[1],
-                                               (String) o[2],
-                                               (String) o[3]))
-            .collect(Collectors.toList());
+        Set<Long> ids = dbQuery.getParameters()
+                               .getDatasets()
+                               .stream()
+                               .map(Long::parseLong)
+                               .collect(Collectors.toCollection(LinkedHashSet::new));
+        return datasetDescriptors.getAll(ids)
+                                 .stream()
+                                 .map(DatasetDescriptor::toTypesMetadata)
+                                 .collect(Collectors.toList());
     }
 
 }
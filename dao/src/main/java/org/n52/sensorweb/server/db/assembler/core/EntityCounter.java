@@ -27,14 +27,19 @@
  */
 package org.n52.sensorweb.server.db.assembler.core;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import javax.inject.Inject;
 
 import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
+import org.n52.io.response.ServiceOutput.DatasetCount;
 import org.n52.sensorweb.server.db.assembler.sampling.MeasuringProgramAssembler;
 import org.n52.sensorweb.server.db.assembler.sampling.SamplingAssembler;
+import org.n52.sensorweb.server.db.cache.EntityCountCache;
 import org.n52.sensorweb.server.db.factory.DataRepositoryTypeFactory;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
@@ -47,6 +52,7 @@ public class EntityCounter {
 
     private static final String TRAJECTORY = "trajectory";
     private static final String PROFILE = "profile";
+    private static final String INDIVIDUAL_OBSERVATION = "individualObservation";
 
     @Inject
     private CategoryAssembler categoryAssembler;
@@ -82,56 +88,66 @@ public class EntityCounter {
 
     private final DataRepositoryTypeFactory dataRepositoryFactory;
 
+    private final EntityCountCache counts;
+
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
-    public EntityCounter(DbQueryFactory dbQueryFactory, DataRepositoryTypeFactory dataRepositoryFactory) {
+    public EntityCounter(DbQueryFactory dbQueryFactory, DataRepositoryTypeFactory dataRepositoryFactory,
+            EntityCountCache counts) {
         this.dbQueryFactory = dbQueryFactory;
         this.dataRepositoryFactory = dataRepositoryFactory;
+        this.counts = counts;
     }
 
     public Long countFeatures(DbQuery query) {
-        return featureAssembler.count(query);
+        return counts.get("features", query, () -> featureAssembler.count(query));
     }
 
     public Long countOfferings(DbQuery query) {
-        return offeringAssembler.count(query);
+        return counts.get("offerings", query, () -> offeringAssembler.count(query));
     }
 
     public Long countProcedures(DbQuery query) {
-        return procedureAssembler.count(query);
+        return counts.get("procedures", query, () -> procedureAssembler.count(query));
     }
 
     public Long countPhenomena(DbQuery query) {
-        return phenomenonAssembler.count(query);
+        return counts.get("phenomena", query, () -> phenomenonAssembler.count(query));
     }
 
     public Long countCategories(DbQuery query) {
-        return categoryAssembler.count(query);
+        return counts.get("categories", query, () -> categoryAssembler.count(query));
     }
 
     public Long countTags(DbQuery query) {
-        return tagAssembler.count(query);
+        return counts.get("tags", query, () -> tagAssembler.count(query));
     }
 
     public Long countPlatforms(DbQuery query) {
-        return platformAssembler.count(query);
+        return counts.get("platforms", query, () -> platformAssembler.count(query));
     }
 
     public Long countDatasets(DbQuery query) {
-        IoParameters parameters = query.getParameters();
-        if (parameters.getValueTypes().isEmpty()) {
-            parameters =
-                    parameters.extendWith("valueTypes", dataRepositoryFactory.getKnownTypes().toArray(new String[0]));
-            return datasetAssembler.count(dbQueryFactory.createFrom(parameters));
-        }
-        return datasetAssembler.count(query);
+        return counts.get("datasets", query, () -> {
+            IoParameters parameters = query.getParameters();
+            if (parameters.getValueTypes().isEmpty()) {
+                parameters = parameters.extendWith("valueTypes",
+                        dataRepositoryFactory.getKnownTypes().toArray(new String[0]));
+                return datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+            }
+            return datasetAssembler.count(query);
+        });
     }
 
     public Long countSamplings(DbQuery query) {
-        return measuringProgramAssembler.isPresent() ? measuringProgramAssembler.get().count(query) : null;
+        return samplingAssembler.isPresent()
+                ? counts.get("samplings", query, () -> samplingAssembler.get().count(query))
+                : null;
     }
 
     public Long countMeasuringPrograms(DbQuery query) {
-        return samplingAssembler.isPresent() ? samplingAssembler.get().count(query) : null;
+        return measuringProgramAssembler.isPresent()
+                ? counts.get("measuringPrograms", query, () -> measuringProgramAssembler.get().count(query))
+                : null;
     }
 
     public Long countTimeseries(DbQuery query) {
@@ -139,7 +155,7 @@ public class EntityCounter {
     }
 
     public Long countIndividualObservations(DbQuery query) {
-        return countDataset(query, "individualObservation");
+        return countDataset(query, INDIVIDUAL_OBSERVATION);
     }
 
     public Long countTrajectories(DbQuery query) {
@@ -150,17 +166,74 @@ public class EntityCounter {
         return countDataset(query, PROFILE, PROFILE);
     }
 
-    private Long countDataset(DbQuery query, String datasetType) {
+    /**
+     * Counts all datasets and the datasets of each type. Unless the query filters dataset or observation types
+     * itself, all counts are derived from a single query grouping the datasets by their types.
+     *
+     * @param query
+     *            the query
+     * @return the dataset counts
+     */
+    public DatasetCount countDatasetTypes(DbQuery query) {
+        DatasetCount datasetCount = new DatasetCount();
         IoParameters parameters = query.getParameters();
-        parameters = parameters.replaceWith(Parameters.FILTER_DATASET_TYPES, datasetType);
-        return datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+        if (parameters.containsParameter(Parameters.FILTER_DATASET_TYPES)
+                || parameters.containsParameter(Parameters.FILTER_OBSERVATION_TYPES)) {
+            // type counts replace the type filters of the query
+            datasetCount.setTotalAmount(countDatasets(query));
+            datasetCount.setAmountTimeseries(countTimeseries(query));
+            datasetCount.setAmountIndividualObservations(countIndividualObservations(query));
+            datasetCount.setAmountProfiles(countProfiles(query));
+            datasetCount.setAmountTrajectories(countTrajectories(query));
+            return datasetCount;
+        }
+        Map<List<String>, Long> countsByTypes =
+                counts.get("datasetTypes", query, () -> datasetAssembler.countByTypes(query));
+        Set<String> knownTypes = dataRepositoryFactory.getKnownTypes();
+        boolean filtersValueTypes = !parameters.getValueTypes().isEmpty();
+        long total = 0;
+        long timeseries = 0;
+        long individualObservations = 0;
+        long profiles = 0;
+        long trajectories = 0;
+        for (Map.Entry<List<String>, Long> entry : countsByTypes.entrySet()) {
+            String datasetType = entry.getKey().get(0);
+            String observationType = entry.getKey().get(1);
+            long count = entry.getValue();
+            if (filtersValueTypes || knownTypes.contains(entry.getKey().get(2))) {
+                total += count;
+            }
+            timeseries += "timeseries".equals(datasetType) ? count : 0;
+            individualObservations += INDIVIDUAL_OBSERVATION.equals(datasetType) ? count : 0;
+            trajectories += TRAJECTORY.equals(datasetType) ? count : 0;
+            // datasets of type and observation type profile are counted twice like countProfiles does
+            profiles += PROFILE.equals(datasetType) ? count : 0;
+            profiles += PROFILE.equals(observationType) ? count : 0;
+        }
+        datasetCount.setTotalAmount(total);
+        datasetCount.setAmountTimeseries(timeseries);
+        datasetCount.setAmountIndividualObservations(individualObservations);
+        datasetCount.setAmountProfiles(profiles);
+        datasetCount.setAmountTrajectories(trajectories);
+        return datasetCount;
+    }
+
+    private Long countDataset(DbQuery query, String datasetType) {
+        return counts.get(datasetType, query, () -> {
+            IoParameters parameters = query.getParameters();
+            parameters = parameters.replaceWith(Parameters.FILTER_DATASET_TYPES, datasetType);
+            return datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+        });
     }
 
     private Long countDataset(DbQuery query, String datasetType, String observationType) {
-        IoParameters parameters = query.getParameters().replaceWith(Parameters.FILTER_DATASET_TYPES, datasetType);
-        Long count = datasetAssembler.count(dbQueryFactory.createFrom(parameters));
-        parameters = query.getParameters().replaceWith(Parameters.FILTER_OBSERVATION_TYPES, observationType);
-        return count + datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+        return counts.get(datasetType + "+" + observationType, query, () -> {
+            IoParameters parameters =
+                    query.getParameters().replaceWith(Parameters.FILTER_DATASET_TYPES, datasetType);
+            Long count = datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+            parameters = query.getParameters().replaceWith(Parameters.FILTER_OBSERVATION_TYPES, observationType);
+            return count + datasetAssembler.count(dbQueryFactory.createFrom(parameters));
+        });
     }
 
 }
@@ -100,6 +100,11 @@ public class FeatureAssembler
         return filterSpec.selectFrom(dsFilterSpec.toSubquery(datasetPredicate), id);
     }
 
+    @Override
+    protected boolean isBulkInsertable(AbstractFeatureEntity entity) {
+        return !entity.hasParents();
+    }
+
     @Override
     public AbstractFeatureEntity getOrInsertInstance(AbstractFeatureEntity entity) {
         AbstractFeatureEntity<?> instance = getParameterRepository().getInstance(entity);
@@ -30,24 +30,48 @@ package org.n52.sensorweb.server.db.assembler.core;
 import java.util.Optional;
 
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
+import org.n52.sensorweb.server.db.cache.IdentityCache;
 import org.n52.sensorweb.server.db.repositories.core.FormatRepository;
 import org.n52.series.db.beans.FormatEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Resolves formats via an {@link IdentityCache}, as the set of formats is small and nearly static. Missing
+ * formats are inserted within the transaction of the caller, which keeps their keys locked until it completed.
+ * Their ids get cached once it committed.
+ */
 @Component
 public class FormatAssembler {
 
     @Inject
     private FormatRepository formatRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final IdentityCache<FormatEntity> formats;
+
+    public FormatAssembler() {
+        this.formats = new IdentityCache<>(FormatEntity::getFormat, FormatEntity::getId,
+                () -> formatRepository.findAll());
+    }
+
     @Transactional
     public FormatEntity getOrInsertInstance(FormatEntity format) {
+        Long id = formats.getId(format, this::findOrInsert);
+        return entityManager.getReference(FormatEntity.class, id);
+    }
+
+    private FormatEntity findOrInsert(FormatEntity format) {
         Optional<FormatEntity> instance = formatRepository.findByFormat(format.getFormat());
         if (instance.isPresent()) {
             return instance.get();
         }
         return formatRepository.saveAndFlush(format);
     }
+
 }
@@ -95,6 +95,11 @@ public class OfferingAssembler extends ParameterOutputAssembler<OfferingEntity,
         return filterSpec.selectFrom(datasetPredicate);
     }
 
+    @Override
+    protected boolean isBulkInsertable(OfferingEntity entity) {
+        return !entity.hasParents();
+    }
+
     @Override
     public OfferingEntity getOrInsertInstance(OfferingEntity entity) {
         OfferingEntity instance = getParameterRepository().getInstance(entity);
@@ -96,6 +96,11 @@ public class PhenomenonAssembler
         return filterSpec.selectFrom(dsFilterSpec.toSubquery(datasetPredicate));
     }
 
+    @Override
+    protected boolean isBulkInsertable(PhenomenonEntity entity) {
+        return !entity.hasParents();
+    }
+
     @Override
     public PhenomenonEntity getOrInsertInstance(PhenomenonEntity entity) {
         PhenomenonEntity instance = getParameterRepository().getInstance(entity);
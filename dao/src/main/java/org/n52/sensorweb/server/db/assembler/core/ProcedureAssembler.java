@@ -96,6 +96,11 @@ public class ProcedureAssembler
         return filterSpec.selectFrom(dsFilterSpec.toSubquery(datasetPredicate));
     }
 
+    @Override
+    protected boolean isBulkInsertable(ProcedureEntity entity) {
+        return !entity.hasParents();
+    }
+
     @Override
     public ProcedureEntity getOrInsertInstance(ProcedureEntity entity) {
         ProcedureEntity instance = getParameterRepository().getInstance(entity);
@@ -27,6 +27,7 @@
  */
 package org.n52.sensorweb.server.db.assembler.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -43,6 +44,7 @@ import org.n52.sensorweb.server.db.assembler.ClearAssembler;
 import org.n52.sensorweb.server.db.assembler.InsertAssembler;
 import org.n52.sensorweb.server.db.assembler.mapper.OutputMapperFactory;
 import org.n52.sensorweb.server.db.assembler.mapper.ServiceOutputMapper;
+import org.n52.sensorweb.server.db.cache.EntityCountCache;
 import org.n52.sensorweb.server.db.factory.ServiceEntityFactory;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.query.DatasetQuerySpecifications;
@@ -80,6 +82,9 @@ public class ServiceAssembler
     @Inject
     private OutputMapperFactory outputMapperFactory;
 
+    @Inject
+    private EntityCountCache entityCounts;
+
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
     public ServiceAssembler(final Optional<ParameterDataRepository<ServiceEntity>> serviceRepository) {
         this.serviceRepository = serviceRepository;
@@ -95,6 +100,17 @@ public class ServiceAssembler
         return refresh(getParameterRepository().saveAndFlush(entity));
     }
 
+    /**
+     * Gets or inserts the given services one by one, as found services get updated, see
+     * {@link #getOrInsertInstance(ServiceEntity)}.
+     */
+    @Override
+    public List<ServiceEntity> getOrInsertInstances(Collection<ServiceEntity> entities) {
+        List<ServiceEntity> instances = new ArrayList<>(entities.size());
+        entities.forEach(entity -> instances.add(getOrInsertInstance(entity)));
+        return instances;
+    }
+
     @Override
     public ParameterDataRepository<ServiceEntity> getParameterRepository() {
         return isSetServiceRepository() ? serviceRepository.get() : null;
@@ -102,7 +118,8 @@ public class ServiceAssembler
 
     @Override
     public List<ServiceOutput> getAllCondensed(final DbQuery query) {
-        return findAll(query).map(it -> getMapper(query).createCondensed(it, prepareEmptyOutput()))
+        ServiceOutputMapper mapper = getMapper(query);
+        return findAll(query).map(it -> mapper.createCondensed(it, prepareEmptyOutput()))
                 .collect(Collectors.toList());
     }
 
@@ -116,7 +133,8 @@ public class ServiceAssembler
 
     @Override
     public List<ServiceOutput> getAllExpanded(final DbQuery query) {
-        return findAll(query).map(it -> getMapper(query).createExpanded(it, prepareEmptyOutput()))
+        ServiceOutputMapper mapper = getMapper(query);
+        return findAll(query).map(it -> mapper.createExpanded(it, prepareEmptyOutput()))
                 .collect(Collectors.toList());
     }
 
@@ -127,13 +145,15 @@ public class ServiceAssembler
             final Specification<ServiceEntity> publicEntity = createPublicPredicate(id, query);
             entity = getParameterRepository().findOne(publicEntity);
         }
-        return entity.map(it -> getMapper(query).createExpanded(it, prepareEmptyOutput())).orElse(
-                getMapper(query).createExpanded(serviceEntityFactory.getServiceEntity(), prepareEmptyOutput()));
+        ServiceOutputMapper mapper = getMapper(query);
+        return entity.map(it -> mapper.createExpanded(it, prepareEmptyOutput())).orElseGet(
+            () -> mapper.createExpanded(serviceEntityFactory.getServiceEntity(), prepareEmptyOutput()));
     }
 
     @Override
     public Collection<SearchResult> searchFor(final DbQuery query) {
-        return findAll(query).parallel().map(it -> getMapper(query).createSearchResult(it, new ServiceSearchResult()))
+        ServiceOutputMapper mapper = getMapper(query);
+        return findAll(query).parallel().map(it -> mapper.createSearchResult(it, new ServiceSearchResult()))
                 .collect(Collectors.toList());
     }
 
@@ -179,6 +199,7 @@ public class ServiceAssembler
     @Override
     public void clearUnusedForService(ServiceEntity service) {
         getParameterRepository().delete(service);
+        entityCounts.invalidateAll();
     }
 
     @Override
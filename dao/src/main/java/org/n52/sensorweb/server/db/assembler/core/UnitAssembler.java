@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.n52.sensorweb.server.db.cache.IdentityCache;
+import org.n52.sensorweb.server.db.repositories.core.UnitRepository;
+import org.n52.series.db.beans.UnitEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Resolves units via an {@link IdentityCache}, as the set of units is small and nearly static. Missing
+ * units are inserted within the transaction of the caller, which keeps their keys locked until it completed.
+ * Their ids get cached once it committed.
+ */
+@Component
+public class UnitAssembler {
+
+    @Inject
+    private UnitRepository unitRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final IdentityCache<UnitEntity> units;
+
+    public UnitAssembler() {
+        this.units = new IdentityCache<>(UnitEntity::getIdentifier, UnitEntity::getId,
+                () -> unitRepository.findAll());
+    }
+
+    @Transactional
+    public UnitEntity getOrInsertInstance(UnitEntity unit) {
+        Long id = units.getId(unit, this::findOrInsert);
+        return entityManager.getReference(UnitEntity.class, id);
+    }
+
+    /**
+     * Gets or inserts all given units, resolving those not cached yet together.
+     *
+     * @param units
+     *            the units to get or insert
+     * @return the persisted units by identifier
+     */
+    @Transactional
+    public Map<String, UnitEntity> getOrInsertInstances(Collection<UnitEntity> units) {
+        Map<String, UnitEntity> instances = new HashMap<>();
+        Map<String, Long> ids = this.units.getIds(units, this::findOrInsertAll);
+        ids.forEach((identifier, id) -> instances.put(identifier, entityManager.getReference(UnitEntity.class, id)));
+        return instances;
+    }
+
+    private UnitEntity findOrInsert(UnitEntity unit) {
+        UnitEntity instance = unitRepository.getInstance(unit);
+        if (instance != null) {
+            return instance;
+        }
+        return unitRepository.saveAndFlush(unit);
+    }
+
+    private List<UnitEntity> findOrInsertAll(List<UnitEntity> units) {
+        List<UnitEntity> instances = unitRepository.findAllByIdentifier(
+                units.stream().map(UnitEntity::getIdentifier).collect(Collectors.toList()));
+        Set<String> persisted = instances.stream().map(UnitEntity::getIdentifier).collect(Collectors.toSet());
+        List<UnitEntity> missing = new ArrayList<>();
+        for (UnitEntity unit : units) {
+            if (!persisted.contains(unit.getIdentifier())) {
+                missing.add(unit);
+            }
+        }
+        if (!missing.isEmpty()) {
+            instances.addAll(unitRepository.saveAll(missing));
+            unitRepository.flush();
+        }
+        return instances;
+    }
+
+}
@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.locationtech.jts.geom.Geometry;
@@ -98,7 +99,9 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
     private boolean hasSelecetion;
     private Set<String> selection = new LinkedHashSet<>();
     private Map<String, Set<String>> subSelection = new LinkedHashMap<>();
-    private GeometryFactory geometryFactory;
+    private final Map<String, GeometryFactory> geometryFactories = new ConcurrentHashMap<>();
+    private volatile ServiceOutputMapper expandedServiceMapper;
+    private final Map<Long, String> labels;
     private String hrefBase;
 
     public ParameterOutputSearchResultMapper(DbQuery query, OutputMapperFactory outputMapperFactory,
@@ -109,6 +112,7 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
         this.hrefBase = getDbQuery() != null && getDbQuery().getParameters() != null
                 ? getDbQuery().getParameters().getHrefBase()
                 : "";
+        this.labels = subMapper ? new ConcurrentHashMap<>() : null;
         if (!subMapper) {
             if (getDbQuery().getParameters().containsParameter(Parameters.SELECT)) {
                 this.selection.addAll(getDbQuery().getParameters().getSelectOriginal());
@@ -164,6 +168,26 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
         return new ArrayList<>();
     }
 
+    /**
+     * Sub-mappers condense the parents of all entities of a request, so they create the label of each parent
+     * once. The outputs themselves are created for each entity, as they may be changed afterwards.
+     */
+    @Override
+    public String createLabel(E entity, DbQuery query) {
+        if (labels == null || entity.getId() == null || query != getDbQuery()) {
+            return OutputMapper.super.createLabel(entity, query);
+        }
+        String label = labels.get(entity.getId());
+        if (label == null) {
+            // not created within computeIfAbsent, labelling may initialize lazy translations
+            label = OutputMapper.super.createLabel(entity, query);
+            if (label != null) {
+                labels.putIfAbsent(entity.getId(), label);
+            }
+        }
+        return label;
+    }
+
     @Override
     public O addExpandedValues(E entity, O output) {
         addService(entity, output);
@@ -179,7 +203,7 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
 
     protected O addService(E entity, O output) {
         if (output instanceof AbstractOutput && getDbQuery().getParameters().isSelected(AbstractOutput.SERVICE)) {
-            ServiceOutput serviceOutput = outputMapperFactory.getServiceMapper(getDbQuery())
+            ServiceOutput serviceOutput = getExpandedServiceMapper()
                     .createCondensed(outputMapperFactory.getServiceEntity(entity), new ServiceOutput());
             ((AbstractOutput) output).setValue(AbstractOutput.SERVICE, serviceOutput, getDbQuery().getParameters(),
                     ((AbstractOutput) output)::setService);
@@ -187,6 +211,14 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
         return output;
     }
 
+    private ServiceOutputMapper getExpandedServiceMapper() {
+        if (expandedServiceMapper == null) {
+            // benign race, concurrent callers create equivalent mappers
+            expandedServiceMapper = outputMapperFactory.getServiceMapper(getDbQuery());
+        }
+        return expandedServiceMapper;
+    }
+
     public Geometry createGeometry(AbstractFeatureEntity<?> featureEntity) {
         return featureEntity.isSetGeometry() ? getGeometry(featureEntity.getGeometryEntity()) : null;
     }
@@ -208,12 +240,11 @@ public abstract class ParameterOutputSearchResultMapper<E extends DescribableEnt
     }
 
     private GeometryFactory createGeometryFactory(String srsId) {
-        if (geometryFactory == null) {
+        // the mapper is shared by all entities of a request, so keep one factory per srs
+        return geometryFactories.computeIfAbsent(srsId == null ? "" : srsId, key -> {
             PrecisionModel pm = new PrecisionModel(PrecisionModel.FLOATING);
-            this.geometryFactory =
-                    srsId == null ? new GeometryFactory(pm) : new GeometryFactory(pm, CRSUtils.getSrsIdFrom(srsId));
-        }
-        return geometryFactory;
+            return srsId == null ? new GeometryFactory(pm) : new GeometryFactory(pm, CRSUtils.getSrsIdFrom(srsId));
+        });
     }
 
     protected OutputMapperFactory getOutputMapperFactory() {
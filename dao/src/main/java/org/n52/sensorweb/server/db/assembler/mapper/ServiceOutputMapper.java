@@ -37,7 +37,6 @@ import org.n52.io.handler.IoHandlerFactory;
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.ParameterOutput;
 import org.n52.io.response.ServiceOutput;
-import org.n52.io.response.ServiceOutput.DatasetCount;
 import org.n52.io.response.ServiceOutput.ParameterCount;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.DatasetOutput;
@@ -101,23 +100,13 @@ public class ServiceOutputMapper extends ParameterOutputSearchResultMapper<Servi
         quantities.setFeaturesSize(counter.countFeatures(serviceQuery));
         quantities.setPlatformsSize(counter.countPlatforms(serviceQuery));
         quantities.setTagsSize(counter.countTags(serviceQuery));
-        quantities.setDatasets(createDatasetCount(counter, serviceQuery));
+        quantities.setDatasets(counter.countDatasetTypes(serviceQuery));
 
         quantities.setSamplingsSize(counter.countSamplings(serviceQuery));
         quantities.setMeasuringProgramsSize(counter.countMeasuringPrograms(serviceQuery));
         return quantities;
     }
 
-    private DatasetCount createDatasetCount(EntityCounter counter, DbQuery query) {
-        DatasetCount datasetCount = new DatasetCount();
-        datasetCount.setTotalAmount(counter.countDatasets(query));
-        datasetCount.setAmountTimeseries(counter.countTimeseries(query));
-        datasetCount.setAmountIndividualObservations(counter.countIndividualObservations(query));
-        datasetCount.setAmountProfiles(counter.countProfiles(query));
-        datasetCount.setAmountTrajectories(counter.countTrajectories(query));
-        return datasetCount;
-    }
-
     private String getServiceType(ServiceEntity entity) {
         return entity.getType() != null ? entity.getType() : SERVICE_TYPE;
     }
@@ -27,15 +27,10 @@
  */
 package org.n52.sensorweb.server.db.assembler.value;
 
-import java.math.BigDecimal;
-
 import org.n52.io.response.dataset.AbstractValue;
-import org.n52.sensorweb.server.db.old.dao.DbQuery;
-import org.n52.sensorweb.server.db.query.DataQuerySpecifications;
 import org.n52.sensorweb.server.db.repositories.core.DataRepository;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
 import org.n52.series.db.beans.DataEntity;
-import org.n52.series.db.beans.DatasetEntity;
 
 public abstract class AbstractNumericalValueAssembler<E extends DataEntity<T>,
                                                       V extends AbstractValue<?>,
@@ -46,19 +41,4 @@ public abstract class AbstractNumericalValueAssembler<E extends DataEntity<T>,
         super(dataRepository, datasetRepository);
     }
 
-    public V getMax(DatasetEntity dataset, DbQuery query) {
-        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return assembleDataValue((E) dataFilterSpec.max(dataset, getEntityManager()), dataset, query);
-    }
-
-    public V getMin(DatasetEntity dataset, DbQuery query) {
-        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return assembleDataValue((E) dataFilterSpec.min(dataset, getEntityManager()), dataset, query);
-    }
-
-    public BigDecimal getAverage(DatasetEntity dataset, DbQuery query) {
-        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return dataFilterSpec.average(dataset, getEntityManager());
-    }
-
 }
@@ -31,11 +31,18 @@ import static java.util.stream.Collectors.toMap;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -44,8 +51,17 @@ import java.util.stream.Stream;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
 import org.hibernate.Hibernate;
+import org.hibernate.jpa.QueryHints;
 import org.hibernate.proxy.HibernateProxy;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -55,11 +71,18 @@ import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.DatasetMetadata;
 import org.n52.sensorweb.server.db.TimeOutputCreator;
 import org.n52.sensorweb.server.db.ValueAssembler;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptor;
+import org.n52.sensorweb.server.db.cache.DatasetDescriptorCache;
+import org.n52.sensorweb.server.db.cache.LatestValueCache;
 import org.n52.sensorweb.server.db.factory.ServiceEntityFactory;
+import org.n52.sensorweb.server.db.old.dao.DataPageToken;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
+import org.n52.sensorweb.server.db.old.dao.QueryUtils;
 import org.n52.sensorweb.server.db.query.DataQuerySpecifications;
+import org.n52.sensorweb.server.db.query.DataQuerySpecifications.OuterValueQuery;
 import org.n52.sensorweb.server.db.repositories.core.DataRepository;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
 import org.n52.series.db.beans.DataEntity;
@@ -68,12 +91,18 @@ import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.db.beans.GeometryEntity;
 import org.n52.series.db.beans.ServiceEntity;
 import org.n52.series.db.beans.parameter.ParameterEntity;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.util.StreamUtils;
 
 public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends AbstractValue<?>, T>
         implements ValueAssembler<E, V, T>, TimeOutputCreator {
 
+    protected static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final String PARAMETERS = "parameters";
+
     /**
      * Preconfigured service entity. Alternative to accessing service entities from a database (in case there
      * data model and mappings supports it).
@@ -83,10 +112,35 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
     @Inject
     protected ServiceEntityFactory serviceEntityFactory;
 
+    /**
+     * Resolves domain identifiers of datasets without querying the dataset table on each request.
+     */
+    @Inject
+    protected DatasetDescriptorCache datasetDescriptors;
+
+    /**
+     * Remembers first and last observations of datasets which do not link them directly.
+     */
+    @Inject
+    protected LatestValueCache latestValues;
+
+    /**
+     * Number of rows fetched per database round-trip when streaming data.
+     */
+    @Value("${database.data.fetchSize:" + DEFAULT_FETCH_SIZE + "}")
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * How the closest values outside the requested timespan get queried, see {@link OuterValueQuery}.
+     */
+    private OuterValueQuery outerValueQuery = OuterValueQuery.AUTO;
+
     private final DataRepository<E> dataRepository;
 
     private final DatasetRepository datasetRepository;
 
+    private final Class<E> dataEntityType;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -95,6 +149,7 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
     protected AbstractValueAssembler(DataRepository<E> dataRepository, DatasetRepository datasetRepository) {
         this.dataRepository = dataRepository;
         this.datasetRepository = datasetRepository;
+        this.dataEntityType = resolveDataEntityType();
     }
 
     @Inject
@@ -104,6 +159,15 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
                 : new LinkedHashMap<>();
     }
 
+    /**
+     * @param outerValueQuery
+     *            the name of an {@link OuterValueQuery}, parsed once so that unknown names fail at startup
+     */
+    @Value("${database.data.outerValues.query:auto}")
+    public void setOuterValueQuery(String outerValueQuery) {
+        this.outerValueQuery = OuterValueQuery.fromString(outerValueQuery);
+    }
+
     protected boolean isNoDataValue(DataEntity<?> data, DatasetEntity dataset) {
         final ServiceEntity service = getServiceEntity(dataset);
         return service.isNoDataValue(data);
@@ -128,22 +192,131 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
                 : assembleDataValues(dataset, dbQuery);
     }
 
+    /**
+     * Assembles the data of multiple datasets. Non-expanded data of datasets which are not backed by a
+     * {@link ValueConnector} is fetched with a single query ordered by dataset and demultiplexed afterwards,
+     * instead of issuing one query per dataset. Results are mapped by the given ids, which may differ from the
+     * database ids, see {@link QueryUtils#parseToId(String)}. Ids of datasets not found are passed to
+     * {@link #getData(String, DbQuery)}, like when requested one by one.
+     */
+    @Override
+    public Map<String, Data<V>> getData(Collection<String> datasetIds, DbQuery dbQuery) {
+        if (datasetIds.size() < 2 || !isBatchRetrievalSupported(dbQuery)) {
+            return ValueAssembler.super.getData(datasetIds, dbQuery);
+        }
+        Map<String, Long> parsedIds = new LinkedHashMap<>();
+        datasetIds.forEach(id -> parsedIds.put(id, QueryUtils.parseToId(id)));
+        Map<Long, DatasetEntity> batchable = new LinkedHashMap<>();
+        Map<Long, Data<V>> assembled = new HashMap<>();
+        for (DatasetEntity entity : datasetRepository.findAllById(new LinkedHashSet<>(parsedIds.values()))) {
+            DatasetEntity dataset = (DatasetEntity) Hibernate.unproxy(entity);
+            if (hasConnector(dataset)) {
+                assembled.put(dataset.getId(), assembleDataValues(dataset, dbQuery));
+            } else {
+                batchable.put(dataset.getId(), dataset);
+            }
+        }
+        assembled.putAll(assembleDataValues(batchable, dbQuery));
+        Map<String, Data<V>> result = new LinkedHashMap<>();
+        parsedIds.forEach((id, parsedId) -> {
+            Data<V> data = assembled.get(parsedId);
+            result.put(id, data != null ? data : getData(id, dbQuery));
+        });
+        return result;
+    }
+
+    /**
+     * Data of multiple datasets is assembled from one data query (see
+     * {@link #assembleDataValues(Map, DbQuery)}) unless expanded output, matching of domain ids or paged data is
+     * requested.
+     * Assemblers which match data differently than via {@link #createFilterSpecification(Map, DbQuery)} have
+     * to return {@literal false}.
+     */
+    @Override
+    public boolean isBatchRetrievalSupported(DbQuery query) {
+        return !query.isExpanded() && !query.isMatchDomainIds() && !query.isDataPaging();
+    }
+
+    /**
+     * Assembled first values are cached per {@link #getLatestValueVariant(DbQuery) variant}, so that listing
+     * datasets does not read their first observation again as long as it did not change. Each request gets its
+     * own {@link #copyCachedValue(AbstractValue) copy}.
+     */
     @Override
     public V getFirstValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> value = entity.getFirstObservation() != null ? entity.getFirstObservation()
+        String variant = getLatestValueVariant(query);
+        Optional<V> cached = latestValues != null ? latestValues.getFirstValue(entity, variant) : Optional.empty();
+        if (cached.isPresent()) {
+            return copyCachedValue(cached.get());
+        }
+        DataEntity<?> data = entity.getFirstObservation() != null ? entity.getFirstObservation()
                 : entity.isSetFirstValueAt() ? getDataValueViaTimestart(entity, query) : null;
-        return value != null ? assembleDataValueWithMetadata(unproxy(value), entity, query) : null;
+        V value = data != null ? assembleDataValueWithMetadata(unproxy(data), entity, query) : null;
+        if (value != null && latestValues != null) {
+            latestValues.putFirstValue(entity, variant, copyCachedValue(value));
+        }
+        return value;
     }
 
+    /**
+     * Assembled last values are cached per {@link #getLatestValueVariant(DbQuery) variant}, see
+     * {@link #getFirstValue(DatasetEntity, DbQuery)}.
+     */
     @Override
     public V getLastValue(DatasetEntity entity, DbQuery query) {
-        DataEntity<?> value = entity.getLastObservation() != null ? entity.getLastObservation()
+        String variant = getLatestValueVariant(query);
+        Optional<V> cached = latestValues != null ? latestValues.getLastValue(entity, variant) : Optional.empty();
+        if (cached.isPresent()) {
+            return copyCachedValue(cached.get());
+        }
+        DataEntity<?> data = entity.getLastObservation() != null ? entity.getLastObservation()
                 : entity.isSetLastValueAt() ? getDataValueViaTimeend(entity, query) : null;
-        return value != null ? assembleDataValueWithMetadata(unproxy(value), entity, query) : null;
+        V value = data != null ? assembleDataValueWithMetadata(unproxy(data), entity, query) : null;
+        if (value != null && latestValues != null) {
+            latestValues.putLastValue(entity, variant, copyCachedValue(value));
+        }
+        return value;
+    }
+
+    /**
+     * Copies an assembled value to cache or a cached one to hand out, so that decorating the value of one request
+     * does not change it for others. The copy gets all bean properties of the given value, nested outputs are
+     * shared. Assemblers whose values hold nested outputs being changed after assembling have to override.
+     *
+     * @param value
+     *            the assembled value
+     * @return a copy of the value
+     */
+    @SuppressWarnings("unchecked")
+    protected V copyCachedValue(V value) {
+        V copy = (V) BeanUtils.instantiateClass(value.getClass());
+        BeanUtils.copyProperties(value, copy);
+        return copy;
+    }
+
+    /**
+     * Identifies the query options an assembled value depends on, i.e. expanded output, time intervals, time
+     * format, spatial reference and locale. Assemblers reading further query options have to add them.
+     *
+     * @param query
+     *            the query
+     * @return the variant of values assembled for the given query
+     */
+    protected String getLatestValueVariant(DbQuery query) {
+        IoParameters parameters = query.getParameters();
+        return String.join("|", Boolean.toString(query.isExpanded()),
+                Boolean.toString(parameters.isShowTimeIntervals()), Boolean.toString(parameters.formatToUnixTime()),
+                query.getDatabaseSridCode(), query.getLocale());
     }
 
     private DatasetEntity getDataset(DbQuery dbQuery, String id) {
-        return !dbQuery.isMatchDomainIds() ? getDataset(Long.parseLong(id)) : datasetRepository.getOneByIdentifier(id);
+        if (!dbQuery.isMatchDomainIds()) {
+            return getDataset(Long.parseLong(id));
+        }
+        return datasetDescriptors != null
+                ? datasetDescriptors.getByIdentifier(id).map(DatasetDescriptor::getId).map(this::getDataset)
+                        .orElse(null)
+                : datasetRepository.getOneByIdentifier(id);
     }
 
     private DatasetEntity getDataset(long id) {
@@ -182,9 +355,78 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
      * @return the assembled data
      */
     protected Data<V> assembleDataValues(DatasetEntity dataset, DbQuery query) {
-        return findAll(dataset, query).filter(it -> it != null)
-                .map(it -> assembleDataValueWithMetadata(it, dataset, query))
-                .collect(Collectors.reducing(new Data<V>(), this::toData, Data::addData));
+        if (query.isDataPaging()) {
+            return assembleDataPage(dataset, query);
+        }
+        try (Stream<E> entities = findAll(dataset, query)) {
+            return entities.filter(Objects::nonNull)
+                    .map(it -> detach(it, assembleDataValueWithMetadata(it, dataset, query)))
+                    .collect(Collectors.reducing(new Data<V>(), this::toData, Data::addData));
+        }
+    }
+
+    /**
+     * Assembles one page of data values. Data is ordered by sampling time end and id, and the page starts
+     * after the entity referenced by the requested page token, see
+     * {@link DataQuerySpecifications#matchPageToken()}. One more entity than the page size is read to decide
+     * whether there is a next page. Like all streamed data, each entity is detached once assembled.
+     *
+     * @param dataset
+     *            the dataset
+     * @param query
+     *            the query
+     * @return the assembled page of data
+     */
+    protected Data<V> assembleDataPage(DatasetEntity dataset, DbQuery query) {
+        int pageSize = query.getDataPageSize();
+        PagedData<V> page = new PagedData<>();
+        Specification<E> specification = orderedBy(createFilterSpecification(dataset, query),
+                DataEntity.PROPERTY_SAMPLING_TIME_END, DataEntity.PROPERTY_ID);
+        try (Stream<E> entities = stream(specification, pageSize + 1)) {
+            Iterator<E> iterator = entities.filter(Objects::nonNull).iterator();
+            E last = null;
+            for (int i = 0; i < pageSize && iterator.hasNext(); i++) {
+                last = iterator.next();
+                page.addNewValue(detach(last, assembleDataValueWithMetadata(last, dataset, query)));
+            }
+            if (last != null && iterator.hasNext()) {
+                page.setNextPageToken(DataPageToken.of(last).encode());
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Assembles data values of multiple datasets from one query, ordered by dataset.
+     *
+     * @param datasets
+     *            the datasets mapped by their id
+     * @param query
+     *            the query
+     * @return the assembled data mapped by dataset id, in order of the given datasets
+     */
+    protected Map<Long, Data<V>> assembleDataValues(Map<Long, DatasetEntity> datasets, DbQuery query) {
+        Map<Long, Data<V>> result = createEmptyData(datasets);
+        if (datasets.isEmpty()) {
+            return result;
+        }
+        Specification<E> specification = orderedBy(createFilterSpecification(datasets, query),
+                DataEntity.PROPERTY_DATASET + "." + DescribableEntity.PROPERTY_ID,
+                DataEntity.PROPERTY_SAMPLING_TIME_END);
+        try (Stream<E> entities = stream(specification)) {
+            entities.filter(Objects::nonNull).forEach(it -> {
+                DatasetEntity dataset = datasets.get(it.getDataset().getId());
+                result.get(dataset.getId())
+                        .addNewValue(detach(it, assembleDataValueWithMetadata(it, dataset, query)));
+            });
+        }
+        return result;
+    }
+
+    protected Map<Long, Data<V>> createEmptyData(Map<Long, DatasetEntity> datasets) {
+        Map<Long, Data<V>> result = new LinkedHashMap<>();
+        datasets.keySet().forEach(id -> result.put(id, new Data<>()));
+        return result;
     }
 
     private Data<V> toData(V value) {
@@ -199,11 +441,161 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
     }
 
     protected Stream<E> findAll(DatasetEntity dataset, DbQuery query) {
+        return stream(createFilterSpecification(dataset, query));
+    }
+
+    /**
+     * Creates the specification matching all data of the given dataset which fulfill the query filters. Both
+     * complete and paged data are matched by it, so assemblers restricting data further have to override this.
+     *
+     * @param dataset
+     *            the dataset
+     * @param query
+     *            the query
+     * @return the data filter specification
+     */
+    protected Specification<E> createFilterSpecification(DatasetEntity dataset, DbQuery query) {
         DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<E> of(
                 dataset != null ? query.replaceWith(Parameters.DATASETS, Long.toString(dataset.getId())) : query);
-        Specification<E> predicate = dataFilterSpec.matchFilters();
-        Iterable<E> entities = dataRepository.findAll(predicate);
-        return StreamUtils.createStreamFromIterator(entities.iterator());
+        return dataFilterSpec.matchFilters();
+    }
+
+    /**
+     * Creates the specification matching all data of the given datasets which fulfill the query filters.
+     *
+     * @param datasets
+     *            the datasets mapped by their id
+     * @param query
+     *            the query
+     * @return the data filter specification
+     */
+    protected Specification<E> createFilterSpecification(Map<Long, DatasetEntity> datasets, DbQuery query) {
+        Collection<String> ids = datasets.keySet().stream().map(Object::toString).collect(Collectors.toList());
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<E> of(
+                query.replaceWith(Parameters.DATASETS, ids));
+        return dataFilterSpec.matchFilters();
+    }
+
+    /**
+     * Decorates a specification so that matching data will be ordered ascending by the given properties.
+     *
+     * @param specification
+     *            the specification to decorate
+     * @param properties
+     *            the properties to order by, nested properties separated by dot
+     * @return the ordering specification
+     */
+    protected Specification<E> orderedBy(Specification<E> specification, String... properties) {
+        return (root, query, builder) -> {
+            query.orderBy(Arrays.stream(properties).map(it -> builder.asc(getPath(root, it)))
+                    .collect(Collectors.toList()));
+            return specification.toPredicate(root, query, builder);
+        };
+    }
+
+    private static Path<?> getPath(Root<?> root, String property) {
+        Path<?> path = root;
+        for (String segment : property.split("\\.")) {
+            path = path.get(segment);
+        }
+        return path;
+    }
+
+    /**
+     * Streams all data entities matching the given specification. Rows are fetched from a database cursor
+     * in chunks of the configured fetch size instead of being materialized as a whole, so that memory
+     * consumption does not grow with the requested timespan. The returned stream holds database resources
+     * and has to be closed by the caller.
+     *
+     * @param specification
+     *            the specification to match
+     * @return a stream of matching data entities
+     * @see #detach(DataEntity, Object)
+     */
+    protected Stream<E> stream(Specification<E> specification) {
+        return createStreamingQuery(specification).getResultStream();
+    }
+
+    /**
+     * Streams at most the given number of data entities matching the given specification, see
+     * {@link #stream(Specification)}.
+     *
+     * @param specification
+     *            the specification to match
+     * @param maxResults
+     *            the maximum number of entities
+     * @return a stream of matching data entities
+     */
+    protected Stream<E> stream(Specification<E> specification, int maxResults) {
+        return createStreamingQuery(specification).setMaxResults(maxResults).getResultStream();
+    }
+
+    private TypedQuery<E> createStreamingQuery(Specification<E> specification) {
+        Class<E> entityType = dataEntityType;
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<E> criteria = builder.createQuery(entityType);
+        Root<E> root = criteria.from(entityType);
+        criteria.select(root).where(specification.toPredicate(root, criteria, builder));
+        return createStreamingQuery(criteria);
+    }
+
+    /**
+     * Streams the given properties of all data entities matching the given specification as tuples, followed by
+     * a parameter of the data as {@link #prepareValue(AbstractValue, DataEntity, DatasetEntity, DbQuery)} outputs
+     * them. Unlike {@link #stream(Specification)} no entities but the parameters get hydrated, which makes this
+     * the cheaper option when an output needs only a few plain columns. The parameters are left joined, so data
+     * without parameters is streamed once with a {@literal null} parameter, while data having several parameters
+     * is streamed once per parameter. Callers order by data id, at least within equal values of the other order
+     * properties, to receive the rows of one data consecutively. The returned stream holds database resources and
+     * has to be closed by the caller.
+     *
+     * @param specification
+     *            the specification to match
+     * @param properties
+     *            the data entity properties to select in tuple order, nested properties separated by dot
+     * @return a stream of tuples containing the selected properties and a {@link ParameterEntity} or
+     *         {@literal null} as last element
+     */
+    protected Stream<Tuple> streamWithParameters(Specification<E> specification, String... properties) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = builder.createTupleQuery();
+        Root<E> root = criteria.from(dataEntityType);
+        List<Selection<?>> selections = new ArrayList<>(properties.length + 1);
+        Arrays.stream(properties).map(it -> getPath(root, it)).forEach(selections::add);
+        selections.add(root.join(PARAMETERS, JoinType.LEFT));
+        criteria.multiselect(selections).where(specification.toPredicate(root, criteria, builder));
+        return createStreamingQuery(criteria).getResultStream();
+    }
+
+    private <R> TypedQuery<R> createStreamingQuery(CriteriaQuery<R> criteria) {
+        return entityManager.createQuery(criteria)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true);
+    }
+
+    /**
+     * Removes an already assembled data entity from the persistence context, so that streaming large
+     * timespans does not accumulate managed entities.
+     *
+     * @param <O>
+     *            the type of the assembled output
+     * @param entity
+     *            the data entity to detach
+     * @param output
+     *            the output assembled from the entity
+     * @return the output
+     */
+    protected <O> O detach(E entity, O output) {
+        if (entityManager.contains(entity)) {
+            entityManager.detach(entity);
+        }
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Class<E> resolveDataEntityType() {
+        Class<?>[] types = GenericTypeResolver.resolveTypeArguments(getClass(), AbstractValueAssembler.class);
+        return types != null && types[0] != null ? (Class<E>) types[0] : (Class<E>) DataEntity.class;
     }
 
     /**
@@ -315,7 +707,8 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
         // e.g. filter by bbox and get closest data point
 
         DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return (E) dataFilterSpec.matchClosestBeforeStart(dataset, entityManager).orElse(null);
+        return (E) dataFilterSpec.matchClosestBeforeStart(dataset, entityManager, getOuterValueQuery())
+                .orElse(null);
     }
 
     @Override
@@ -324,17 +717,81 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
         // e.g. filter by bbox and get closest data point^
 
         DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return (E) dataFilterSpec.matchClosestAfterEnd(dataset, getEntityManager()).orElse(null);
+        return (E) dataFilterSpec.matchClosestAfterEnd(dataset, getEntityManager(), getOuterValueQuery())
+                .orElse(null);
+    }
+
+    /**
+     * Gets the closest values before and after the requested timespan. Depending on the configured
+     * {@link OuterValueQuery} both are read with one query.
+     *
+     * @param dataset
+     *            the dataset
+     * @param query
+     *            the query
+     * @return the closest values, ordered by sampling time start
+     */
+    protected List<E> getClosestOuterValues(DatasetEntity dataset, DbQuery query) {
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
+        List<DataEntity> values = dataFilterSpec.matchClosestOuterValues(dataset, entityManager,
+                getOuterValueQuery());
+        return values.stream().map(it -> (E) it).collect(Collectors.toList());
+    }
+
+    /**
+     * Adds the closest values before and after the requested timespan to the metadata of expanded data.
+     *
+     * @param metadata
+     *            the metadata of the assembled data
+     * @param dataset
+     *            the dataset
+     * @param query
+     *            the query
+     */
+    protected void addClosestOuterValues(DatasetMetadata<V> metadata, DatasetEntity dataset, DbQuery query) {
+        long timespanStart = query.getTimespan().getStartMillis();
+        for (E outerValue : getClosestOuterValues(dataset, query)) {
+            V value = assembleDataValue(unproxy(outerValue), dataset, query);
+            if (outerValue.getSamplingTimeStart().getTime() < timespanStart) {
+                metadata.setValueBeforeTimespan(value);
+            } else {
+                metadata.setValueAfterTimespan(value);
+            }
+        }
+    }
+
+    private OuterValueQuery getOuterValueQuery() {
+        return outerValueQuery;
     }
 
     private E getDataValueViaTimestart(DatasetEntity entity, DbQuery query) {
+        E cached = latestValues != null ? findData(latestValues.getFirst(entity)) : null;
+        if (cached != null) {
+            return cached;
+        }
         DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return (E) dataFilterSpec.matchStart(entity, entityManager).orElse(null);
+        E value = (E) dataFilterSpec.matchStart(entity, entityManager).orElse(null);
+        if (value != null && latestValues != null) {
+            latestValues.putFirst(entity, value.getId());
+        }
+        return value;
     }
 
     private E getDataValueViaTimeend(DatasetEntity entity, DbQuery query) {
+        E cached = latestValues != null ? findData(latestValues.getLast(entity)) : null;
+        if (cached != null) {
+            return cached;
+        }
         DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(query);
-        return (E) dataFilterSpec.matchEnd(entity, entityManager).orElse(null);
+        E value = (E) dataFilterSpec.matchEnd(entity, entityManager).orElse(null);
+        if (value != null && latestValues != null) {
+            latestValues.putLast(entity, value.getId());
+        }
+        return value;
+    }
+
+    private E findData(Optional<Long> id) {
+        return id.map(it -> (E) entityManager.find(DataEntity.class, it)).orElse(null);
     }
 
     protected E unproxy(DataEntity<?> dataEntity) {
@@ -354,6 +811,10 @@ public abstract class AbstractValueAssembler<E extends DataEntity<T>, V extends
         return entityManager;
     }
 
+    protected DataRepository<E> getDataRepository() {
+        return dataRepository;
+    }
+
     protected boolean hasValidEntriesWithinRequestedTimespan(List<?> observations) {
         return observations.size() > 0;
     }
@@ -106,14 +106,7 @@ public class BooleanValueAssembler extends AbstractValueAssembler<BooleanDataEnt
         }
         DatasetMetadata<BooleanValue> metadata = result.getMetadata();
 
-        BooleanDataEntity previousValue = getClosestValueAfterEnd(dataset, query);
-        BooleanDataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(previousValue, dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(nextValue, dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
         List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
             metadata.setReferenceValues(assembleReferenceSeries(referenceValues, query));
@@ -103,14 +103,7 @@ public class CategoryValueAssembler extends AbstractValueAssembler<CategoryDataE
         }
         DatasetMetadata<CategoryValue> metadata = result.getMetadata();
 
-        CategoryDataEntity previousValue = getClosestValueBeforeStart(dataset, query);
-        CategoryDataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(previousValue, dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(nextValue, dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
 
         List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
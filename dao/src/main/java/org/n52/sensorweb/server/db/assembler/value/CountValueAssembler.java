@@ -102,14 +102,7 @@ public class CountValueAssembler extends AbstractNumericalValueAssembler<CountDa
         }
         DatasetMetadata<CountValue> metadata = result.getMetadata();
 
-        CountDataEntity previousValue = getClosestValueAfterEnd(dataset, query);
-        CountDataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(previousValue, dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(nextValue, dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
 
         List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.value;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.n52.sensorweb.server.db.assembler.core.DatasetAssembler;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Inserts data in bulk. Instead of a lookup, a flush and a refresh per entity, data is persisted in JDBC batches
+ * of {@value #BATCH_SIZE_KEY} entities, flushed at batch boundaries and detached afterwards, so that the
+ * persistence context does not grow with the amount of data. The first and last values of each dataset are
+ * updated once after all data has been inserted.
+ * <p>
+ * Data has to reference persisted datasets. Statements get batched only if data ids are not generated by
+ * identity columns, i.e. the mappings have to use sequences, and if inserts get ordered by entity type
+ * ({@code hibernate.order_inserts}, enabled by default). Allocating sequence values in blocks (pooled
+ * optimizer) additionally saves a round-trip per entity.
+ */
+@Component
+@Transactional
+@SuppressFBWarnings({ "EI_EXPOSE_REP2" })
+public class DataInsertAssembler {
+
+    static final String BATCH_SIZE_KEY = "database.data.insert.batchSize";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataInsertAssembler.class);
+
+    private final DatasetAssembler<?> datasetAssembler;
+
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DataInsertAssembler(DatasetAssembler<?> datasetAssembler,
+            @Value("${" + BATCH_SIZE_KEY + ":500}") int batchSize) {
+        this.datasetAssembler = datasetAssembler;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Inserts data of one or more datasets.
+     *
+     * @param <E>
+     *            the data type
+     * @param data
+     *            the data to insert, each referencing a persisted dataset
+     * @return the inserted data in order of the given data, detached from the persistence context
+     * @throws IllegalArgumentException
+     *             if data does not reference a persisted dataset
+     */
+    public <E extends DataEntity<?>> List<E> insertAll(Collection<E> data) {
+        List<E> inserted = new ArrayList<>(data.size());
+        Map<Long, ValueRange> ranges = new LinkedHashMap<>();
+        Session session = entityManager.unwrap(Session.class);
+        Integer jdbcBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            List<E> batch = new ArrayList<>(batchSize);
+            for (E entity : data) {
+                DatasetEntity dataset = entity.getDataset();
+                if (dataset == null || dataset.getId() == null) {
+                    throw new IllegalArgumentException("Data has to reference a persisted dataset.");
+                }
+                entityManager.persist(entity);
+                ranges.computeIfAbsent(dataset.getId(), id -> new ValueRange(dataset)).add(entity);
+                batch.add(entity);
+                inserted.add(entity);
+                if (batch.size() == batchSize) {
+                    flush(batch);
+                }
+            }
+            flush(batch);
+        } finally {
+            session.setJdbcBatchSize(jdbcBatchSize);
+        }
+        ranges.values().forEach(this::updateDataset);
+        LOGGER.debug("Inserted {} data of {} datasets", inserted.size(), ranges.size());
+        return inserted;
+    }
+
+    private void flush(List<? extends DataEntity<?>> batch) {
+        if (!batch.isEmpty()) {
+            entityManager.flush();
+            batch.forEach(entityManager::detach);
+            batch.clear();
+        }
+    }
+
+    private void updateDataset(ValueRange range) {
+        DatasetEntity dataset = entityManager.find(DatasetEntity.class, range.dataset.getId());
+        DatasetEntity values = new DatasetEntity();
+        values.setFirstValueAt(range.first.getSamplingTimeStart());
+        values.setFirstObservation(getReference(range.first));
+        values.setFirstQuantityValue(getQuantityValue(range.first));
+        values.setLastValueAt(range.last.getSamplingTimeEnd());
+        values.setLastObservation(getReference(range.last));
+        values.setLastQuantityValue(getQuantityValue(range.last));
+        datasetAssembler.updateFirstLastValues(dataset, values);
+    }
+
+    private DataEntity<?> getReference(DataEntity<?> data) {
+        // inserted data is detached already
+        return entityManager.getReference(DataEntity.class, data.getId());
+    }
+
+    private static BigDecimal getQuantityValue(DataEntity<?> data) {
+        return data instanceof QuantityDataEntity ? ((QuantityDataEntity) data).getValue() : null;
+    }
+
+    /**
+     * The earliest and latest data inserted into a dataset.
+     */
+    private static final class ValueRange {
+
+        private final DatasetEntity dataset;
+
+        private DataEntity<?> first;
+
+        private DataEntity<?> last;
+
+        ValueRange(DatasetEntity dataset) {
+            this.dataset = dataset;
+        }
+
+        void add(DataEntity<?> data) {
+            if (first == null || data.getSamplingTimeStart().before(first.getSamplingTimeStart())) {
+                first = data;
+            }
+            if (last == null || data.getSamplingTimeEnd().after(last.getSamplingTimeEnd())) {
+                last = data;
+            }
+        }
+    }
+
+}
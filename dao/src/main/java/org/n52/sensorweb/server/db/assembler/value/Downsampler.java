@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.n52.web.exception.BadRequestException;
+
+/**
+ * Reduces a time ordered series of rows to a maximum number of points, before any output is assembled for
+ * them. Rows are consumed one by one and selected rows are passed downstream as soon as they are known.
+ * Selection is based on equally sized time buckets over the requested timespan, so that only the rows of at
+ * most two buckets have to be held in memory.
+ *
+ * If the series contains no more rows than the requested maximum, all rows are passed downstream unchanged.
+ * Otherwise rows without a value (e.g. no data values) are skipped. Call {@link #finish()} after the last row
+ * has been consumed.
+ *
+ * @param <T>
+ *            the type of rows
+ */
+public abstract class Downsampler<T> implements Consumer<T> {
+
+    public enum Method {
+
+        /**
+         * Largest-Triangle-Three-Buckets, which keeps the visual shape of a series.
+         */
+        LTTB,
+
+        /**
+         * Keeps minimum and maximum of each bucket.
+         */
+        MINMAX;
+
+        public static Method fromString(String method) {
+            if (method == null || method.isEmpty()) {
+                return LTTB;
+            }
+            try {
+                return valueOf(method.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unsupported downsampling method '" + method
+                        + "', supported are 'lttb' and 'minmax'.", e);
+            }
+        }
+    }
+
+    private final int maxPoints;
+
+    private final int bucketCount;
+
+    private final long start;
+
+    private final long bucketWidth;
+
+    private final ToLongFunction<T> time;
+
+    private final Function<T, ? extends Number> value;
+
+    private final Consumer<T> downstream;
+
+    private final List<T> buffer = new ArrayList<>();
+
+    private boolean exceeded;
+
+    protected Downsampler(int maxPoints, int bucketCount, long start, long end, ToLongFunction<T> time,
+            Function<T, ? extends Number> value, Consumer<T> downstream) {
+        this.maxPoints = maxPoints;
+        this.bucketCount = Math.max(1, bucketCount);
+        this.start = start;
+        this.bucketWidth = Math.max(1L, (end - start) / this.bucketCount + 1);
+        this.time = time;
+        this.value = value;
+        this.downstream = downstream;
+    }
+
+    /**
+     * Creates a downsampler.
+     *
+     * @param <T>
+     *            the type of rows
+     * @param method
+     *            the downsampling method
+     * @param maxPoints
+     *            the maximum number of rows to pass downstream
+     * @param start
+     *            start of the timespan in milliseconds
+     * @param end
+     *            end of the timespan in milliseconds
+     * @param time
+     *            extracts the time (in milliseconds) of a row
+     * @param value
+     *            extracts the value of a row, may return {@literal null}
+     * @param downstream
+     *            receives the selected rows in time order
+     * @return a new downsampler
+     */
+    public static <T> Downsampler<T> create(Method method, int maxPoints, long start, long end,
+            ToLongFunction<T> time, Function<T, ? extends Number> value, Consumer<T> downstream) {
+        switch (method) {
+            case MINMAX:
+                int points = Math.max(2, maxPoints);
+                return new MinMax<>(points, points / 2, start, end, time, value, downstream);
+            case LTTB:
+            default:
+                // first and last row are always kept
+                int lttbPoints = Math.max(3, maxPoints);
+                return new LargestTriangleThreeBuckets<>(lttbPoints, lttbPoints - 2, start, end, time, value,
+                        downstream);
+        }
+    }
+
+    @Override
+    public void accept(T row) {
+        if (exceeded) {
+            add(row);
+        } else {
+            buffer.add(row);
+            if (buffer.size() > maxPoints) {
+                exceeded = true;
+                buffer.forEach(this::add);
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Passes all remaining selected rows downstream.
+     */
+    public void finish() {
+        if (exceeded) {
+            flush();
+        } else {
+            buffer.forEach(downstream);
+            buffer.clear();
+        }
+    }
+
+    protected abstract void add(T row);
+
+    protected abstract void flush();
+
+    protected void emit(T row) {
+        downstream.accept(row);
+    }
+
+    protected int getBucket(T row) {
+        long offset = getTime(row) - start;
+        return (int) Math.min(bucketCount - 1, Math.max(0, offset / bucketWidth));
+    }
+
+    protected long getTime(T row) {
+        return time.applyAsLong(row);
+    }
+
+    protected boolean hasValue(T row) {
+        return value.apply(row) != null;
+    }
+
+    protected double getValue(T row) {
+        return value.apply(row).doubleValue();
+    }
+
+    private static final class MinMax<T> extends Downsampler<T> {
+
+        private int bucket = -1;
+
+        private T min;
+
+        private T max;
+
+        MinMax(int maxPoints, int bucketCount, long start, long end, ToLongFunction<T> time,
+                Function<T, ? extends Number> value, Consumer<T> downstream) {
+            super(maxPoints, bucketCount, start, end, time, value, downstream);
+        }
+
+        @Override
+        protected void add(T row) {
+            if (!hasValue(row)) {
+                return;
+            }
+            int rowBucket = getBucket(row);
+            if (rowBucket != bucket) {
+                flush();
+                bucket = rowBucket;
+            }
+            if (min == null || getValue(row) < getValue(min)) {
+                min = row;
+            }
+            if (max == null || getValue(row) > getValue(max)) {
+                max = row;
+            }
+        }
+
+        @Override
+        protected void flush() {
+            if (min == max) {
+                if (min != null) {
+                    emit(min);
+                }
+            } else if (getTime(min) <= getTime(max)) {
+                emit(min);
+                emit(max);
+            } else {
+                emit(max);
+                emit(min);
+            }
+            min = null;
+            max = null;
+        }
+    }
+
+    private static final class LargestTriangleThreeBuckets<T> extends Downsampler<T> {
+
+        // the last selected row
+        private T anchor;
+
+        // the bucket to select the next row from
+        private Bucket pending;
+
+        // the following bucket, its average is the third vertex of the triangle
+        private Bucket next;
+
+        // held back until it is known if it is the last row of the series
+        private T last;
+
+        LargestTriangleThreeBuckets(int maxPoints, int bucketCount, long start, long end, ToLongFunction<T> time,
+                Function<T, ? extends Number> value, Consumer<T> downstream) {
+            super(maxPoints, bucketCount, start, end, time, value, downstream);
+        }
+
+        @Override
+        protected void add(T row) {
+            if (!hasValue(row)) {
+                return;
+            }
+            if (anchor == null) {
+                anchor = row;
+                emit(row);
+                return;
+            }
+            if (last != null) {
+                addToBucket(last);
+            }
+            last = row;
+        }
+
+        private void addToBucket(T row) {
+            int index = getBucket(row);
+            if (pending == null) {
+                pending = new Bucket(index);
+                pending.add(row);
+            } else if (next == null) {
+                if (index == pending.index) {
+                    pending.add(row);
+                } else {
+                    next = new Bucket(index);
+                    next.add(row);
+                }
+            } else if (index == next.index) {
+                next.add(row);
+            } else {
+                select(pending, next.getAverageTime(), next.getAverageValue());
+                pending = next;
+                next = new Bucket(index);
+                next.add(row);
+            }
+        }
+
+        @Override
+        protected void flush() {
+            if (last == null) {
+                return;
+            }
+            if (pending != null) {
+                if (next != null) {
+                    select(pending, next.getAverageTime(), next.getAverageValue());
+                    select(next, getTime(last), getValue(last));
+                } else {
+                    select(pending, getTime(last), getValue(last));
+                }
+            }
+            emit(last);
+            pending = null;
+            next = null;
+            last = null;
+        }
+
+        private void select(Bucket bucket, double nextTime, double nextValue) {
+            double anchorTime = getTime(anchor);
+            double anchorValue = getValue(anchor);
+            double maxArea = -1;
+            T selected = null;
+            for (T row : bucket.rows) {
+                double area = Math.abs((anchorTime - nextTime) * (getValue(row) - anchorValue)
+                        - (anchorTime - getTime(row)) * (nextValue - anchorValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = row;
+                }
+            }
+            anchor = selected;
+            emit(selected);
+        }
+
+        private final class Bucket {
+
+            private final int index;
+
+            private final List<T> rows = new ArrayList<>();
+
+            private double timeSum;
+
+            private double valueSum;
+
+            Bucket(int index) {
+                this.index = index;
+            }
+
+            void add(T row) {
+                rows.add(row);
+                timeSum += getTime(row);
+                valueSum += getValue(row);
+            }
+
+            double getAverageTime() {
+                return timeSum / rows.size();
+            }
+
+            double getAverageValue() {
+                return valueSum / rows.size();
+            }
+        }
+    }
+
+}
@@ -30,8 +30,8 @@ package org.n52.sensorweb.server.db.assembler.value;
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
 
+import org.n52.io.request.Parameters;
 import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.profile.ProfileDataItem;
 import org.n52.io.response.dataset.profile.ProfileValue;
@@ -43,20 +43,16 @@ import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.ProfileDataEntity;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.util.StreamUtils;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public abstract class ProfileValueAssembler<V, T>
         extends AbstractValueAssembler<ProfileDataEntity, ProfileValue<V>, Set<DataEntity<?>>> {
 
-    private final DataRepository<ProfileDataEntity> profileDataRepository;
-
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
     public ProfileValueAssembler(DataRepository<ProfileDataEntity> profileDataRepository,
             DatasetRepository datasetRepository) {
         super(profileDataRepository, datasetRepository);
-        this.profileDataRepository = profileDataRepository;
     }
 
     @Override
@@ -93,11 +89,15 @@ public abstract class ProfileValueAssembler<V, T>
     }
 
     @Override
-    protected Stream<ProfileDataEntity> findAll(DatasetEntity dataset, DbQuery query) {
-        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<ProfileDataEntity>of(query);
-        Specification<ProfileDataEntity> predicate = dataFilterSpec.matchFiltersParentsIsNull();
-        Iterable<ProfileDataEntity> entities = profileDataRepository.findAll(predicate);
-        return StreamUtils.createStreamFromIterator(entities.iterator());
+    public boolean isBatchRetrievalSupported(DbQuery query) {
+        return false;
+    }
+
+    @Override
+    protected Specification<ProfileDataEntity> createFilterSpecification(DatasetEntity dataset, DbQuery query) {
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<ProfileDataEntity>of(
+                dataset != null ? query.replaceWith(Parameters.DATASETS, Long.toString(dataset.getId())) : query);
+        return dataFilterSpec.matchFiltersParentsIsNull();
     }
 
     public ProfileDataItem<V> createProfileDataItem() {
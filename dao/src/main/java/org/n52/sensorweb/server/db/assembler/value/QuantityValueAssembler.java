@@ -31,12 +31,23 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import javax.persistence.Tuple;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.n52.io.request.IoParameters;
 import org.n52.io.request.Parameters;
+import org.n52.io.response.TimeOutput;
 import org.n52.io.response.dataset.Data;
 import org.n52.io.response.dataset.DatasetMetadata;
 import org.n52.io.response.dataset.DatasetOutput;
@@ -49,13 +60,18 @@ import org.n52.sensorweb.server.db.repositories.core.DataRepository;
 import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.series.db.beans.parameter.ParameterEntity;
+import org.springframework.data.jpa.domain.Specification;
 
 @ValueAssemblerComponent(value = "quantity", datasetEntityType = DatasetEntity.class)
 public class QuantityValueAssembler
         extends AbstractNumericalValueAssembler<QuantityDataEntity, QuantityValue, BigDecimal> {
 
+    private static final String DATASET_ID = DataEntity.PROPERTY_DATASET + "." + DescribableEntity.PROPERTY_ID;
+
     public QuantityValueAssembler(DataRepository<QuantityDataEntity> dataRepository,
             DatasetRepository datasetRepository) {
         super(dataRepository, datasetRepository);
@@ -114,9 +130,163 @@ public class QuantityValueAssembler
                     .forEach(entry -> result.addNewValue(entry));
             return result;
         }
+        if (isProjectionApplicable(dataset, query)) {
+            return assembleProjectedDataValues(dataset, query);
+        }
         return super.assembleDataValues(dataset, query);
     }
 
+    /**
+     * A plain (non-expanded) output of stationary data needs just a few columns of each observation, so that
+     * it can be assembled from a projection instead of full data entities. The same applies to downsampled
+     * output, as the selected values represent the series rather than single observations with all their
+     * metadata. Paged data is assembled from entities, as pages are keyed by the data ids.
+     *
+     * @param dataset
+     *            the dataset
+     * @param query
+     *            the query
+     * @return if data can be assembled from a projection
+     */
+    private boolean isProjectionApplicable(DatasetEntity dataset, DbQuery query) {
+        return (!query.isExpanded() || query.isDownsampling()) && !query.isDataPaging() && !dataset.isMobile();
+    }
+
+    private Data<QuantityValue> assembleProjectedDataValues(DatasetEntity dataset, DbQuery query) {
+        ProjectedValueAssembler assembler = new ProjectedValueAssembler(dataset, query);
+        Specification<QuantityDataEntity> specification = orderedBy(createFilterSpecification(dataset, query),
+                DataEntity.PROPERTY_SAMPLING_TIME_END, DescribableEntity.PROPERTY_ID);
+        try (Stream<Tuple> rows = streamWithParameters(specification,
+                DataEntity.PROPERTY_SAMPLING_TIME_START,
+                DataEntity.PROPERTY_SAMPLING_TIME_END,
+                DataEntity.PROPERTY_VALUE,
+                DataEntity.PROPERTY_RESULT_TIME,
+                DescribableEntity.PROPERTY_ID)) {
+            rows.forEach(assembler);
+        }
+        return assembler.finish();
+    }
+
+    @Override
+    protected Map<Long, Data<QuantityValue>> assembleDataValues(Map<Long, DatasetEntity> datasets, DbQuery query) {
+        if (!datasets.values().stream().allMatch(it -> isProjectionApplicable(it, query))) {
+            return super.assembleDataValues(datasets, query);
+        }
+        Map<Long, ProjectedValueAssembler> assemblers = new LinkedHashMap<>();
+        datasets.forEach((id, dataset) -> assemblers.put(id, new ProjectedValueAssembler(dataset, query)));
+        Specification<QuantityDataEntity> specification = orderedBy(createFilterSpecification(datasets, query),
+                DATASET_ID, DataEntity.PROPERTY_SAMPLING_TIME_END, DescribableEntity.PROPERTY_ID);
+        try (Stream<Tuple> rows = streamWithParameters(specification,
+                DataEntity.PROPERTY_SAMPLING_TIME_START,
+                DataEntity.PROPERTY_SAMPLING_TIME_END,
+                DataEntity.PROPERTY_VALUE,
+                DataEntity.PROPERTY_RESULT_TIME,
+                DescribableEntity.PROPERTY_ID,
+                DATASET_ID)) {
+            rows.forEach(row -> assemblers.get(row.get(5, Long.class)).accept(row));
+        }
+        Map<Long, Data<QuantityValue>> result = new LinkedHashMap<>();
+        assemblers.forEach((id, assembler) -> result.put(id, assembler.finish()));
+        return result;
+    }
+
+    /**
+     * Assembles values of one dataset from projected rows containing sampling time start, sampling time end,
+     * value, result time and data id, followed by a parameter of the data. Consecutive rows of the same data
+     * differ in their parameter only and are merged. Rows are downsampled before assembly if requested.
+     */
+    private final class ProjectedValueAssembler implements Consumer<Tuple> {
+
+        private final DatasetEntity dataset;
+
+        private final IoParameters parameters;
+
+        private final DateTimeZone zone;
+
+        // transient entity to check values against the configured no data values
+        private final QuantityDataEntity noDataProbe = new QuantityDataEntity();
+
+        private final Data<QuantityValue> data = new Data<>();
+
+        private final Downsampler<Tuple> downsampler;
+
+        // parameter values by name of the data having parameters, mapped by data id
+        private final Map<Long, Map<String, Object>> dataParameters = new HashMap<>();
+
+        private Long lastDataId;
+
+        ProjectedValueAssembler(DatasetEntity dataset, DbQuery query) {
+            this.dataset = dataset;
+            this.parameters = query.getParameters();
+            this.zone = getOriginTimeZone(dataset.getOriginTimezone());
+            this.downsampler = query.isDownsampling() ? createDownsampler(query) : null;
+        }
+
+        private Downsampler<Tuple> createDownsampler(DbQuery query) {
+            Interval timespan = query.getTimespan();
+            return Downsampler.create(Downsampler.Method.fromString(query.getDownsamplingMethod()),
+                    query.getMaxPoints(), timespan.getStartMillis(), timespan.getEndMillis(),
+                    row -> row.get(1, Date.class).getTime(), this::getValue, this::add);
+        }
+
+        @Override
+        public void accept(Tuple row) {
+            Long dataId = row.get(4, Long.class);
+            ParameterEntity<?> parameter = row.get(row.getElements().size() - 1, ParameterEntity.class);
+            if (parameter != null) {
+                dataParameters.computeIfAbsent(dataId, k -> new LinkedHashMap<>())
+                        .put(parameter.getName(), parameter.getValue());
+            }
+            if (dataId.equals(lastDataId)) {
+                // another parameter of the data already accepted
+                return;
+            }
+            lastDataId = dataId;
+            if (downsampler != null) {
+                downsampler.accept(row);
+            } else {
+                add(row);
+            }
+        }
+
+        Data<QuantityValue> finish() {
+            if (downsampler != null) {
+                downsampler.finish();
+            }
+            return data;
+        }
+
+        private void add(Tuple row) {
+            data.addNewValue(assemble(row));
+        }
+
+        private BigDecimal getValue(Tuple row) {
+            noDataProbe.setValue(row.get(2, BigDecimal.class));
+            return getDataValue(noDataProbe, dataset);
+        }
+
+        private QuantityValue assemble(Tuple row) {
+            QuantityValue value = new QuantityValue();
+            Date timestart = row.get(0, Date.class);
+            if (parameters.isShowTimeIntervals() && timestart != null) {
+                value.setTimestart(createTimeOutput(timestart));
+            }
+            Map<String, Object> parameterValues = dataParameters.get(row.get(4, Long.class));
+            if (parameterValues != null) {
+                value.addParameter(parameterValues);
+            }
+            value.setTimestamp(createTimeOutput(row.get(1, Date.class)));
+            value.setValue(getValue(row));
+            value.setResultTime(createTimeOutput(row.get(3, Date.class)));
+            return value;
+        }
+
+        private TimeOutput createTimeOutput(Date date) {
+            return date != null ? new TimeOutput(new DateTime(date).withZone(zone), parameters.formatToUnixTime())
+                    : null;
+        }
+    }
+
     private BigDecimal getDataValue(QuantityDataEntity observation, DatasetEntity dataset) {
         return !isNoDataValue(observation, dataset) ? format(observation, dataset) : null;
     }
@@ -132,39 +302,66 @@ public class QuantityValueAssembler
 
     @Override
     protected Data<QuantityValue> assembleExpandedDataValues(DatasetEntity dataset, DbQuery query) {
-        Data<QuantityValue> result = assembleDataValues(dataset, query);
+        List<DatasetEntity> referenceValues = dataset.getReferenceValues();
+        Map<Long, DatasetEntity> references = new LinkedHashMap<>();
+        if (referenceValues != null) {
+            referenceValues.stream().filter(DatasetEntity::isPublished).forEach(it -> references.put(it.getId(), it));
+        }
+        Map<Long, Data<QuantityValue>> data = assembleDataValuesWithReferences(dataset, references, query);
+        Data<QuantityValue> result = data.remove(dataset.getId());
         if (!result.hasMetadata()) {
             result.setMetadata(new DatasetMetadata<>());
         }
         DatasetMetadata<QuantityValue> metadata = result.getMetadata();
 
-        DataEntity previousValue = getClosestValueBeforeStart(dataset, query);
-        DataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(unproxy(previousValue), dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(unproxy(nextValue), dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
 
-        List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
-            metadata.setReferenceValues(assembleReferenceSeries(referenceValues, query));
+            Map<String, Data<QuantityValue>> referenceSeries = new HashMap<>();
+            data.forEach((id, referenceData) -> referenceSeries
+                    .put(createReferenceDatasetId(query, references.get(id)), referenceData));
+            metadata.setReferenceValues(referenceSeries);
         }
         return result;
     }
 
-    private Map<String, Data<QuantityValue>> assembleReferenceSeries(List<DatasetEntity> referenceValues,
-            DbQuery query) {
-        Map<String, Data<QuantityValue>> referenceSeries = new HashMap<>();
-        for (DatasetEntity referenceSeriesEntity : referenceValues) {
-            if (referenceSeriesEntity.isPublished()) {
-                DbQuery refQuery = query.replaceWith(Parameters.DATASETS, Long.toString(referenceSeriesEntity.getId()));
-                Data<QuantityValue> referenceSeriesData = assembleDataValues(referenceSeriesEntity, refQuery);
-                referenceSeries.put(createReferenceDatasetId(refQuery, referenceSeriesEntity), referenceSeriesData);
+    /**
+     * Assembles the data of a dataset and of its reference datasets. Instead of one query per reference series,
+     * the data of all datasets neither paged nor provided by a connector is read with one query.
+     *
+     * @param dataset
+     *            the dataset
+     * @param references
+     *            the published reference datasets mapped by their id
+     * @param query
+     *            the query
+     * @return the assembled data mapped by dataset id
+     */
+    private Map<Long, Data<QuantityValue>> assembleDataValuesWithReferences(DatasetEntity dataset,
+            Map<Long, DatasetEntity> references, DbQuery query) {
+        Map<Long, DatasetEntity> batched = new LinkedHashMap<>();
+        Map<Long, Data<QuantityValue>> result = new LinkedHashMap<>();
+        if (isBatchRetrievalApplicable(dataset, query)) {
+            batched.put(dataset.getId(), dataset);
+        } else {
+            result.put(dataset.getId(), assembleDataValues(dataset, query));
+        }
+        for (DatasetEntity reference : references.values()) {
+            if (isBatchRetrievalApplicable(reference, query)) {
+                batched.put(reference.getId(), reference);
+            } else {
+                DbQuery refQuery = query.replaceWith(Parameters.DATASETS, Long.toString(reference.getId()));
+                result.put(reference.getId(), assembleDataValues(reference, refQuery));
             }
         }
-        return referenceSeries;
+        if (!batched.isEmpty()) {
+            result.putAll(assembleDataValues(batched, query));
+        }
+        return result;
+    }
+
+    private boolean isBatchRetrievalApplicable(DatasetEntity dataset, DbQuery query) {
+        return !hasConnector(dataset) && !query.isDataPaging();
     }
 
     @Override
@@ -102,14 +102,7 @@ public class RecordValueAssembler extends AbstractValueAssembler<RecordDataEntit
         }
         DatasetMetadata<RecordValue> metadata = result.getMetadata();
 
-        RecordDataEntity previousValue = getClosestValueAfterEnd(dataset, query);
-        RecordDataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(previousValue, dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(nextValue, dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
 
         List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
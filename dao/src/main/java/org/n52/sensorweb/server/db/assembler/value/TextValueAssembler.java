@@ -71,14 +71,7 @@ public class TextValueAssembler extends AbstractValueAssembler<TextDataEntity, T
         }
         DatasetMetadata<TextValue> metadata = result.getMetadata();
 
-        TextDataEntity previousValue = getClosestValueAfterEnd(dataset, query);
-        TextDataEntity nextValue = getClosestValueAfterEnd(dataset, query);
-        if (previousValue != null) {
-            metadata.setValueBeforeTimespan(assembleDataValue(previousValue, dataset, query));
-        }
-        if (nextValue != null) {
-            metadata.setValueAfterTimespan(assembleDataValue(nextValue, dataset, query));
-        }
+        addClosestOuterValues(metadata, dataset, query);
 
         List<DatasetEntity> referenceValues = dataset.getReferenceValues();
         if (referenceValues != null && !referenceValues.isEmpty()) {
@@ -27,6 +27,7 @@
  */
 package org.n52.sensorweb.server.db.assembler.value;
 
+import org.n52.io.request.Parameters;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.query.DataQuerySpecifications;
@@ -35,30 +36,28 @@ import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.data.util.StreamUtils;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.util.stream.Stream;
-
 public abstract class TrajectoryValueAssembler<E extends DataEntity<T>, V extends AbstractValue<?>, T>
     extends AbstractValueAssembler<E, V, T> {
 
-    private final DataRepository<E> trajectoryDataRepository;
-
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
     public TrajectoryValueAssembler(DataRepository<E> trajectoryDataRepository,
                                     DatasetRepository datasetRepository) {
         super(trajectoryDataRepository, datasetRepository);
-        this.trajectoryDataRepository = trajectoryDataRepository;
     }
 
     @Override
-    protected Stream<E> findAll(DatasetEntity dataset, DbQuery query) {
-        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<E>of(query);
-        Specification<E> predicate = dataFilterSpec.matchFiltersParentsNotNull();
-        Iterable<E> entities = trajectoryDataRepository.findAll(predicate);
-        return StreamUtils.createStreamFromIterator(entities.iterator());
+    public boolean isBatchRetrievalSupported(DbQuery query) {
+        return false;
+    }
+
+    @Override
+    protected Specification<E> createFilterSpecification(DatasetEntity dataset, DbQuery query) {
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.<E>of(
+                dataset != null ? query.replaceWith(Parameters.DATASETS, Long.toString(dataset.getId())) : query);
+        return dataFilterSpec.matchFiltersParentsNotNull();
     }
 
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe in-memory cache bounded in size and in the time entries stay valid. Expired entries are
+ * reloaded on access. When the size gets exceeded, expired entries and then the oldest ones are evicted.
+ * A maximum size less than {@literal 1} disables caching, so that each access loads the value.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public class BoundedCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param maxSize
+     *            the maximum number of entries
+     * @param timeToLiveMillis
+     *            the time in milliseconds entries stay valid, less than {@literal 1} to keep them until evicted
+     */
+    public BoundedCache(int maxSize, long timeToLiveMillis) {
+        this(maxSize, timeToLiveMillis, System::currentTimeMillis);
+    }
+
+    BoundedCache(int maxSize, long timeToLiveMillis, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLiveMillis;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param key
+     *            the key
+     * @return the valid value cached for the key or {@literal null}
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Gets the value cached for the key or loads and caches it. Values are loaded without holding a lock,
+     * so that concurrent misses may load the same value twice.
+     *
+     * @param key
+     *            the key
+     * @param loader
+     *            loads the value of a key, may return {@literal null} which does not get cached
+     * @return the value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value == null) {
+            value = loader.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (isEnabled() && value != null) {
+            entries.put(key, new Entry<>(value, clock.getAsLong()));
+            if (entries.size() > maxSize) {
+                evict();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return timeToLive > 0 && clock.getAsLong() - entry.created >= timeToLive;
+    }
+
+    private synchronized void evict() {
+        entries.entrySet().removeIf(it -> isExpired(it.getValue()));
+        int excess = entries.size() - maxSize;
+        if (excess > 0) {
+            // make some room, so that eviction does not run on every insert
+            int toEvict = excess + maxSize / 10;
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(it -> it.getValue().created))
+                    .limit(toEvict)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(entries::remove);
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long created;
+
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+}
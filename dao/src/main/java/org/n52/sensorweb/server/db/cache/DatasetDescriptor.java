@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.n52.io.response.dataset.DatasetTypesMetadata;
+import org.n52.series.db.beans.DatasetEntity;
+
+/**
+ * Immutable snapshot of the dataset metadata needed for lookups which do not require a managed
+ * {@link DatasetEntity}.
+ */
+public final class DatasetDescriptor {
+
+    private final long id;
+
+    private final String identifier;
+
+    private final String datasetType;
+
+    private final String observationType;
+
+    private final String valueType;
+
+    private final String originTimezone;
+
+    private final Integer numberOfDecimals;
+
+    private final String unit;
+
+    private final List<Long> referenceIds;
+
+    private final Long firstValueAt;
+
+    private final Long lastValueAt;
+
+    private DatasetDescriptor(DatasetEntity dataset) {
+        this.id = dataset.getId();
+        this.identifier = dataset.getIdentifier();
+        this.datasetType = dataset.getDatasetType() != null ? dataset.getDatasetType().name() : null;
+        this.observationType = dataset.getObservationType() != null ? dataset.getObservationType().name() : null;
+        this.valueType = dataset.getValueType() != null ? dataset.getValueType().name() : null;
+        this.originTimezone = dataset.getOriginTimezone();
+        this.numberOfDecimals = dataset.getNumberOfDecimals();
+        this.unit = dataset.getUnit() != null ? dataset.getUnit().getSymbol() : null;
+        this.referenceIds = dataset.getReferenceValues() != null
+                ? dataset.getReferenceValues().stream().filter(Objects::nonNull).map(DatasetEntity::getId)
+                        .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList))
+                : Collections.emptyList();
+        this.firstValueAt = dataset.isSetFirstValueAt() ? dataset.getFirstValueAt().getTime() : null;
+        this.lastValueAt = dataset.isSetLastValueAt() ? dataset.getLastValueAt().getTime() : null;
+    }
+
+    /**
+     * Creates a descriptor of the given dataset. Lazy associations get initialized, so this has to be called
+     * within a transaction.
+     *
+     * @param dataset
+     *            the dataset
+     * @return the descriptor
+     */
+    public static DatasetDescriptor of(DatasetEntity dataset) {
+        return new DatasetDescriptor(dataset);
+    }
+
+    public DatasetTypesMetadata toTypesMetadata() {
+        return new DatasetTypesMetadata(Long.toString(id), datasetType, observationType, valueType);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public String getDatasetType() {
+        return datasetType;
+    }
+
+    public String getObservationType() {
+        return observationType;
+    }
+
+    public String getValueType() {
+        return valueType;
+    }
+
+    public String getOriginTimezone() {
+        return originTimezone;
+    }
+
+    public Integer getNumberOfDecimals() {
+        return numberOfDecimals;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public List<Long> getReferenceIds() {
+        return referenceIds;
+    }
+
+    public Date getFirstValueAt() {
+        return firstValueAt != null ? new Date(firstValueAt) : null;
+    }
+
+    public Date getLastValueAt() {
+        return lastValueAt != null ? new Date(lastValueAt) : null;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.DescribableEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraph;
+import com.cosium.spring.data.jpa.entity.graph.domain.EntityGraphUtils;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Caches {@link DatasetDescriptor}s by dataset id and resolves domain identifiers to ids, so that dataset
+ * metadata lookups do not hit the database on every request. Entries expire after
+ * {@value #TTL_KEY} seconds and the cache holds at most {@value #MAX_SIZE_KEY} datasets. A maximum size of
+ * {@literal 0} disables caching. Inserting or updating datasets has to invalidate their entries, see
+ * {@link #invalidate(Long)}. Datasets missing in the cache are loaded together with their unit and reference
+ * datasets, which the descriptor reads.
+ */
+@Component
+@Transactional(readOnly = true)
+@SuppressFBWarnings({ "EI_EXPOSE_REP2" })
+public class DatasetDescriptorCache {
+
+    static final String MAX_SIZE_KEY = "database.cache.datasets.maxSize";
+
+    static final String TTL_KEY = "database.cache.datasets.ttl";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetDescriptorCache.class);
+
+    private static final String REFERENCE_VALUES = "referenceValues";
+
+    private final DatasetRepository datasetRepository;
+
+    private final BoundedCache<Long, DatasetDescriptor> descriptors;
+
+    private final BoundedCache<String, Long> identifiers;
+
+    public DatasetDescriptorCache(DatasetRepository datasetRepository,
+            @Value("${" + MAX_SIZE_KEY + ":10000}") int maxSize,
+            @Value("${" + TTL_KEY + ":300}") long ttlSeconds) {
+        this.datasetRepository = datasetRepository;
+        this.descriptors = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        this.identifiers = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        LOGGER.debug("Dataset descriptor cache {}", descriptors.isEnabled() ? "of size " + maxSize : "disabled");
+    }
+
+    /**
+     * @param id
+     *            the dataset id
+     * @return the descriptor of the dataset, if it exists
+     */
+    public Optional<DatasetDescriptor> get(Long id) {
+        return Optional.ofNullable(descriptors.get(id, this::load));
+    }
+
+    /**
+     * Gets the descriptors of all given datasets. Datasets not cached are loaded with one query.
+     *
+     * @param ids
+     *            the dataset ids
+     * @return the descriptors of the existing datasets in order of the given ids
+     */
+    public List<DatasetDescriptor> getAll(Collection<Long> ids) {
+        Map<Long, DatasetDescriptor> result = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            DatasetDescriptor descriptor = descriptors.getIfPresent(id);
+            result.put(id, descriptor);
+            if (descriptor == null) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (DatasetEntity dataset : datasetRepository.findAllById(missing, createEntityGraph())) {
+                result.put(dataset.getId(), cache(dataset));
+            }
+        }
+        result.values().removeIf(it -> it == null);
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * @param identifier
+     *            the domain identifier of the dataset
+     * @return the descriptor of the dataset, if it exists
+     */
+    public Optional<DatasetDescriptor> getByIdentifier(String identifier) {
+        Long id = identifiers.getIfPresent(identifier);
+        if (id != null) {
+            Optional<DatasetDescriptor> descriptor = get(id);
+            if (descriptor.isPresent() && identifier.equals(descriptor.get().getIdentifier())) {
+                return descriptor;
+            }
+            identifiers.invalidate(identifier);
+        }
+        Specification<DatasetEntity> matchIdentifier = (root, query, builder) -> builder
+                .equal(root.get(DescribableEntity.PROPERTY_IDENTIFIER), identifier);
+        return datasetRepository.findOne(matchIdentifier, createEntityGraph()).map(this::cache);
+    }
+
+    /**
+     * Removes the dataset from the cache, so that its descriptor gets reloaded on next access. Within a
+     * transaction, the dataset is removed once more after the transaction completed, as the descriptor may
+     * have been cached from the uncommitted or the previously committed state meanwhile.
+     *
+     * @param id
+     *            the dataset id
+     */
+    public void invalidate(Long id) {
+        if (id != null) {
+            descriptors.invalidate(id);
+            TransactionCallbacks.afterCompletion(() -> descriptors.invalidate(id));
+        }
+    }
+
+    public void invalidateAll() {
+        descriptors.invalidateAll();
+        identifiers.invalidateAll();
+    }
+
+    private DatasetDescriptor load(Long id) {
+        return datasetRepository.findById(id, createEntityGraph()).map(this::cache).orElse(null);
+    }
+
+    private EntityGraph createEntityGraph() {
+        return EntityGraphUtils.fromAttributePaths(DatasetEntity.PROPERTY_UNIT, REFERENCE_VALUES);
+    }
+
+    private DatasetDescriptor cache(DatasetEntity dataset) {
+        DatasetDescriptor descriptor = DatasetDescriptor.of(dataset);
+        descriptors.put(descriptor.getId(), descriptor);
+        if (descriptor.getIdentifier() != null) {
+            identifiers.put(descriptor.getIdentifier(), descriptor.getId());
+        }
+        return descriptor;
+    }
+
+}
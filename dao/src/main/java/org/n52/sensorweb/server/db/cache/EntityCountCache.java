@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.sensorweb.server.db.old.dao.DbQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches entity counts by counted entity and filters for a short time, as counts get requested by every
+ * client polling the service metadata. Entries expire after {@value #TTL_KEY} seconds and at most
+ * {@value #MAX_SIZE_KEY} counts are held. A maximum size of {@literal 0} disables caching. Inserting or
+ * deleting entities has to invalidate the cache, see {@link #invalidateAll()}.
+ */
+@Component
+public class EntityCountCache {
+
+    static final String MAX_SIZE_KEY = "database.cache.counts.maxSize";
+
+    static final String TTL_KEY = "database.cache.counts.ttl";
+
+    /**
+     * Parameters the key holds in normalized form, or which do not restrict counting queries, i.e. output
+     * options, paging and the timespan, which only data queries match.
+     */
+    private static final String[] KEYED_OR_NON_FILTERS = { Parameters.SERVICE, Parameters.SERVICES,
+        Parameters.FEATURES, Parameters.PROCEDURE, Parameters.PROCEDURES, Parameters.PHENOMENON,
+        Parameters.PHENOMENA, Parameters.OFFERING, Parameters.OFFERINGS, Parameters.CATEGORY,
+        Parameters.CATEGORIES, Parameters.PLATFORM, Parameters.PLATFORMS, Parameters.DATASETS,
+        Parameters.MEASURING_PROGRAMS, Parameters.FILTER_DATASET_TYPES, Parameters.FILTER_OBSERVATION_TYPES,
+        Parameters.FILTER_VALUE_TYPES, Parameters.FILTER_MOBILE, Parameters.BBOX, Parameters.NEAR,
+        Parameters.ODATA_FILTER, Parameters.MATCH_DOMAIN_IDS, Parameters.COMPLEX_PARENT, Parameters.SELECT,
+        Parameters.HREF_BASE, Parameters.LIMIT, Parameters.OFFSET, Parameters.TIMESPAN, DbQuery.PAGE_TOKEN,
+        DbQuery.MAX_POINTS, DbQuery.DOWNSAMPLING, DbQuery.AGGREGATION_PERIOD };
+
+    private final BoundedCache<String, Object> counts;
+
+    public EntityCountCache(@Value("${" + MAX_SIZE_KEY + ":1000}") int maxSize,
+            @Value("${" + TTL_KEY + ":60}") long ttlSeconds) {
+        this.counts = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toMillis(ttlSeconds));
+    }
+
+    /**
+     * Gets a cached count or counts and caches it.
+     *
+     * @param <T>
+     *            the type of count
+     * @param counted
+     *            the name of the counted entities
+     * @param query
+     *            the query the count depends on
+     * @param counter
+     *            counts if no count is cached
+     * @return the count
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String counted, DbQuery query, Supplier<T> counter) {
+        return (T) counts.get(createKey(counted, query), key -> counter.get());
+    }
+
+    /**
+     * Removes all counts. Within a transaction, counts are removed once more after the transaction completed,
+     * as counts may have been cached from the uncommitted or the previously committed state meanwhile.
+     */
+    public void invalidateAll() {
+        counts.invalidateAll();
+        TransactionCallbacks.afterCompletion(counts::invalidateAll);
+    }
+
+    /**
+     * Creates the key of a count from the filters counting queries match. Filter values are ordered, and
+     * output options, paging or the timespan, which only data queries match, do not end up in the key. All other
+     * parameters end up in the key as given, so that a filter not known here never shares the count of a query
+     * not using it.
+     *
+     * @param counted
+     *            the name of the counted entities
+     * @param query
+     *            the query the count depends on
+     * @return the key of the count
+     */
+    static String createKey(String counted, DbQuery query) {
+        IoParameters parameters = query.getParameters();
+        StringBuilder key = new StringBuilder(counted);
+        append(key, "services", parameters.getServices());
+        append(key, "features", parameters.getFeatures());
+        append(key, "procedures", parameters.getProcedures());
+        append(key, "phenomena", parameters.getPhenomena());
+        append(key, "offerings", parameters.getOfferings());
+        append(key, "categories", parameters.getCategories());
+        append(key, "platforms", parameters.getPlatforms());
+        append(key, "tags", parameters.getTags());
+        append(key, "datasets", parameters.getDatasets());
+        append(key, "samplings", parameters.getSamplings());
+        append(key, "measuringPrograms", parameters.getMeasuringPrograms());
+        append(key, "datasetTypes", parameters.getDatasetTypes());
+        append(key, "observationTypes", parameters.getObservationTypes());
+        append(key, "valueTypes", parameters.getValueTypes());
+        append(key, "insitu", parameters.getInsitu());
+        append(key, "mobile", parameters.getMobile());
+        append(key, "q", query.getSearchTerm());
+        append(key, "spatial", query.getSpatialFilter());
+        append(key, "odata", parameters.getAsString(Parameters.ODATA_FILTER, null));
+        append(key, "matchDomainIds", query.isMatchDomainIds());
+        append(key, "complexParent", query.isComplexParent());
+        append(key, "includeHierarchy", query.isIncludeHierarchy());
+        IoParameters others = parameters;
+        for (String parameter : KEYED_OR_NON_FILTERS) {
+            others = others.removeAllOf(parameter);
+        }
+        append(key, "others", others);
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, String filter, Collection<String> values) {
+        if (values != null && !values.isEmpty()) {
+            append(key, filter, new TreeSet<>(values));
+        }
+    }
+
+    private static void append(StringBuilder key, String filter, Object value) {
+        if (value != null && !value.toString().isEmpty()) {
+            key.append('|').append(filter).append('=').append(value);
+        }
+    }
+
+}
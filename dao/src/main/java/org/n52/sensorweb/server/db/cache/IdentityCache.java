@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Interns the ids of small and nearly static sets of entities, e.g. formats and units, by a unique key, so that
+ * inserting entities referencing them does not look them up again and again. All entities are loaded on first
+ * use. Missing entities are looked up or inserted within the transaction of the caller. The key stays locked until
+ * that transaction completed and its id gets cached once the transaction committed, so that concurrent loaders
+ * neither insert the same entity twice nor cache ids of rolled back inserts. Ids loaded within a transaction get
+ * cached once it committed, too. Without an active transaction synchronization, the caller's data is considered
+ * committed. The cache does not notice entities deleted by others, see {@link #invalidateAll()}.
+ *
+ * @param <E>
+ *            the entity type
+ */
+public class IdentityCache<E> {
+
+    /**
+     * Bounds waiting for a key locked by another transaction, as transactions may lock keys in different order.
+     * After that the key is resolved without the lock, leaving duplicates to the unique constraints.
+     */
+    private static final long LOCK_TIMEOUT_SECONDS = 10;
+
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private final Function<? super E, String> key;
+
+    private final Function<? super E, Long> id;
+
+    private final Supplier<? extends Iterable<E>> loader;
+
+    private volatile boolean loaded;
+
+    private volatile int generation;
+
+    /**
+     * @param key
+     *            gets the unique key of an entity
+     * @param id
+     *            gets the id of a persisted entity
+     * @param loader
+     *            loads all persisted entities
+     */
+    public IdentityCache(Function<? super E, String> key, Function<? super E, Long> id,
+            Supplier<? extends Iterable<E>> loader) {
+        this.key = key;
+        this.id = id;
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the id of the persisted entity having the key of the given entity.
+     *
+     * @param entity
+     *            the entity to intern
+     * @param getOrInsert
+     *            looks up or inserts the entity if its key is not cached yet. The key stays locked until the
+     *            current transaction, if any, completed and the id gets cached after it committed.
+     * @return the id of the persisted entity
+     */
+    public Long getId(E entity, UnaryOperator<E> getOrInsert) {
+        String entityKey = key.apply(entity);
+        if (entityKey == null) {
+            return id.apply(getOrInsert.apply(entity));
+        }
+        Long cached = getCached(entityKey);
+        if (cached != null) {
+            return cached;
+        }
+        List<ReentrantLock> acquired = new ArrayList<>(1);
+        try {
+            lock(entityKey, acquired);
+            cached = ids.get(entityKey);
+            if (cached == null) {
+                cached = id.apply(getOrInsert.apply(entity));
+                cache(entityKey, cached);
+            }
+            return cached;
+        } finally {
+            release(acquired);
+        }
+    }
+
+    /**
+     * Gets the ids of the persisted entities having the keys of the given entities. All keys not cached yet are
+     * resolved together. Entities without a key are skipped.
+     *
+     * @param entities
+     *            the entities to intern
+     * @param getOrInsertAll
+     *            looks up or inserts all entities whose keys are not cached yet, see
+     *            {@link #getId(Object, UnaryOperator)}
+     * @return the ids of the persisted entities by key
+     */
+    public Map<String, Long> getIds(Collection<E> entities, UnaryOperator<List<E>> getOrInsertAll) {
+        Map<String, Long> resolved = new HashMap<>();
+        // sorted, so that concurrent callers acquire the locks in the same order
+        Map<String, E> missing = new TreeMap<>();
+        for (E entity : entities) {
+            String entityKey = key.apply(entity);
+            if (entityKey != null) {
+                Long cached = getCached(entityKey);
+                if (cached != null) {
+                    resolved.put(entityKey, cached);
+                } else {
+                    missing.putIfAbsent(entityKey, entity);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            resolved.putAll(getIds(missing, getOrInsertAll));
+        }
+        return resolved;
+    }
+
+    private Map<String, Long> getIds(Map<String, E> missing, UnaryOperator<List<E>> getOrInsertAll) {
+        List<ReentrantLock> acquired = new ArrayList<>(missing.size());
+        try {
+            for (String entityKey : missing.keySet()) {
+                lock(entityKey, acquired);
+            }
+            Map<String, Long> resolved = new HashMap<>();
+            List<E> uncached = new ArrayList<>();
+            for (Map.Entry<String, E> entry : missing.entrySet()) {
+                Long cached = ids.get(entry.getKey());
+                if (cached != null) {
+                    resolved.put(entry.getKey(), cached);
+                } else {
+                    uncached.add(entry.getValue());
+                }
+            }
+            if (!uncached.isEmpty()) {
+                for (E persisted : getOrInsertAll.apply(uncached)) {
+                    String entityKey = key.apply(persisted);
+                    Long persistedId = id.apply(persisted);
+                    cache(entityKey, persistedId);
+                    resolved.put(entityKey, persistedId);
+                }
+            }
+            return resolved;
+        } finally {
+            release(acquired);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        loaded = false;
+        ids.clear();
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private void cache(String entityKey, Long entityId) {
+        TransactionCallbacks.afterCommit(() -> ids.put(entityKey, entityId));
+    }
+
+    private void lock(String entityKey, List<ReentrantLock> acquired) {
+        ReentrantLock lock = locks.computeIfAbsent(entityKey, k -> new ReentrantLock());
+        try {
+            if (lock.tryLock(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                acquired.add(lock);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void release(List<ReentrantLock> acquired) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // completion runs on the thread owning the locks
+            TransactionCallbacks.afterCompletion(() -> acquired.forEach(ReentrantLock::unlock));
+        } else {
+            acquired.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    private Long getCached(String entityKey) {
+        Long cached = ids.get(entityKey);
+        return cached != null || loaded ? cached : load().get(entityKey);
+    }
+
+    /**
+     * Loads all ids within the current transaction, if any, and caches them once it committed. Until then, the
+     * transaction keeps using its own loaded ids.
+     */
+    private Map<String, Long> load() {
+        boolean synchronizing = TransactionSynchronizationManager.isSynchronizationActive();
+        @SuppressWarnings("unchecked")
+        Map<String, Long> loadedIds = synchronizing
+                ? (Map<String, Long>) TransactionSynchronizationManager.getResource(this)
+                : null;
+        if (loadedIds == null) {
+            int loadedGeneration = generation;
+            Map<String, Long> loading = new HashMap<>();
+            for (E entity : loader.get()) {
+                String entityKey = key.apply(entity);
+                if (entityKey != null) {
+                    loading.putIfAbsent(entityKey, id.apply(entity));
+                }
+            }
+            if (synchronizing) {
+                TransactionSynchronizationManager.bindResource(this, loading);
+                TransactionCallbacks.afterCompletion(() -> TransactionSynchronizationManager
+                        .unbindResourceIfPossible(this));
+            }
+            TransactionCallbacks.afterCommit(() -> publish(loading, loadedGeneration));
+            loadedIds = loading;
+        }
+        return loadedIds;
+    }
+
+    private synchronized void publish(Map<String, Long> loadedIds, int loadedGeneration) {
+        // not invalidated meanwhile
+        if (generation == loadedGeneration && !loaded) {
+            loadedIds.forEach(ids::putIfAbsent);
+            loaded = true;
+        }
+    }
+
+}
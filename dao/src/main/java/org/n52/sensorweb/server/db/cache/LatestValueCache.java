@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.series.db.beans.DatasetEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the first and last observation of datasets, both by id and as assembled values. Assembled values are
+ * held per variant, i.e. per combination of query options the value output depends on. They are shared by all
+ * readers, so callers cache and hand out copies of assembled values. Each entry remembers the timestamp it was
+ * resolved for and is only used as long as the dataset's
+ * {@link DatasetEntity#getFirstValueAt() first} or {@link DatasetEntity#getLastValueAt() last} value timestamp
+ * did not change, so newer observations never get hidden by stale entries. Entries are published once the
+ * surrounding transaction committed, see {@link TransactionCallbacks#afterCommit(Runnable)}. Additionally,
+ * entries expire after {@value #TTL_KEY} seconds and at most {@value #MAX_SIZE_KEY} datasets are held. A
+ * maximum size of {@literal 0} disables caching.
+ */
+@Component
+public class LatestValueCache {
+
+    static final String MAX_SIZE_KEY = "database.cache.latestValues.maxSize";
+
+    static final String TTL_KEY = "database.cache.latestValues.ttl";
+
+    private final BoundedCache<Long, LatestValues> cache;
+
+    public LatestValueCache(@Value("${" + MAX_SIZE_KEY + ":10000}") int maxSize,
+            @Value("${" + TTL_KEY + ":300}") long ttlSeconds) {
+        this.cache = new BoundedCache<>(maxSize, TimeUnit.SECONDS.toMillis(ttlSeconds));
+    }
+
+    /**
+     * @param dataset
+     *            the dataset
+     * @return the id of the first observation, if cached for the dataset's current first value timestamp
+     */
+    public Optional<Long> getFirst(DatasetEntity dataset) {
+        return getFirstEntry(dataset).map(it -> it.id);
+    }
+
+    /**
+     * @param dataset
+     *            the dataset
+     * @return the id of the last observation, if cached for the dataset's current last value timestamp
+     */
+    public Optional<Long> getLast(DatasetEntity dataset) {
+        return getLastEntry(dataset).map(it -> it.id);
+    }
+
+    /**
+     * @param <V>
+     *            the value type
+     * @param dataset
+     *            the dataset
+     * @param variant
+     *            the variant of the assembled value
+     * @return the assembled first value, if cached for the variant and the dataset's current first value
+     *         timestamp
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Optional<V> getFirstValue(DatasetEntity dataset, String variant) {
+        return getFirstEntry(dataset).map(it -> (V) it.values.get(variant));
+    }
+
+    /**
+     * @param <V>
+     *            the value type
+     * @param dataset
+     *            the dataset
+     * @param variant
+     *            the variant of the assembled value
+     * @return the assembled last value, if cached for the variant and the dataset's current last value
+     *         timestamp
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Optional<V> getLastValue(DatasetEntity dataset, String variant) {
+        return getLastEntry(dataset).map(it -> (V) it.values.get(variant));
+    }
+
+    /**
+     * Remembers the first observation for the dataset's current first value timestamp.
+     *
+     * @param dataset
+     *            the dataset
+     * @param dataId
+     *            the id of the first observation
+     */
+    public void putFirst(DatasetEntity dataset, Long dataId) {
+        if (cache.isEnabled() && dataset.isSetFirstValueAt() && dataId != null) {
+            Long datasetId = dataset.getId();
+            Long firstAt = getTime(dataset.getFirstValueAt());
+            TransactionCallbacks.afterCommit(() -> {
+                LatestValues values = getOrEmpty(datasetId);
+                cache.put(datasetId, values.withFirst(updateEntry(values.first, firstAt, dataId)));
+            });
+        }
+    }
+
+    /**
+     * Remembers the last observation for the dataset's current last value timestamp.
+     *
+     * @param dataset
+     *            the dataset
+     * @param dataId
+     *            the id of the last observation
+     */
+    public void putLast(DatasetEntity dataset, Long dataId) {
+        if (cache.isEnabled() && dataset.isSetLastValueAt() && dataId != null) {
+            Long datasetId = dataset.getId();
+            Long lastAt = getTime(dataset.getLastValueAt());
+            TransactionCallbacks.afterCommit(() -> {
+                LatestValues values = getOrEmpty(datasetId);
+                cache.put(datasetId, values.withLast(updateEntry(values.last, lastAt, dataId)));
+            });
+        }
+    }
+
+    /**
+     * Remembers the assembled first value for the dataset's current first value timestamp.
+     *
+     * @param dataset
+     *            the dataset
+     * @param variant
+     *            the variant of the assembled value
+     * @param value
+     *            the assembled first value
+     */
+    public void putFirstValue(DatasetEntity dataset, String variant, Object value) {
+        if (cache.isEnabled() && dataset.isSetFirstValueAt() && value != null) {
+            Long datasetId = dataset.getId();
+            Long firstAt = getTime(dataset.getFirstValueAt());
+            TransactionCallbacks.afterCommit(() -> {
+                LatestValues values = getOrEmpty(datasetId);
+                Entry first = updateEntry(values.first, firstAt, null);
+                first.values.put(variant, value);
+                cache.put(datasetId, values.withFirst(first));
+            });
+        }
+    }
+
+    /**
+     * Remembers the assembled last value for the dataset's current last value timestamp.
+     *
+     * @param dataset
+     *            the dataset
+     * @param variant
+     *            the variant of the assembled value
+     * @param value
+     *            the assembled last value
+     */
+    public void putLastValue(DatasetEntity dataset, String variant, Object value) {
+        if (cache.isEnabled() && dataset.isSetLastValueAt() && value != null) {
+            Long datasetId = dataset.getId();
+            Long lastAt = getTime(dataset.getLastValueAt());
+            TransactionCallbacks.afterCommit(() -> {
+                LatestValues values = getOrEmpty(datasetId);
+                Entry last = updateEntry(values.last, lastAt, null);
+                last.values.put(variant, value);
+                cache.put(datasetId, values.withLast(last));
+            });
+        }
+    }
+
+    public void invalidate(Long datasetId) {
+        if (datasetId != null) {
+            cache.invalidate(datasetId);
+        }
+    }
+
+    private Optional<Entry> getFirstEntry(DatasetEntity dataset) {
+        LatestValues values = cache.getIfPresent(dataset.getId());
+        return values != null ? values.first.matching(getTime(dataset.getFirstValueAt())) : Optional.empty();
+    }
+
+    private Optional<Entry> getLastEntry(DatasetEntity dataset) {
+        LatestValues values = cache.getIfPresent(dataset.getId());
+        return values != null ? values.last.matching(getTime(dataset.getLastValueAt())) : Optional.empty();
+    }
+
+    private LatestValues getOrEmpty(Long datasetId) {
+        LatestValues values = cache.getIfPresent(datasetId);
+        return values != null ? values : LatestValues.EMPTY;
+    }
+
+    /**
+     * Keeps the assembled values of an entry as long as it refers to the same timestamp and observation.
+     */
+    private static Entry updateEntry(Entry entry, Long at, Long id) {
+        if (!at.equals(entry.at) || id != null && entry.id != null && !id.equals(entry.id)) {
+            return new Entry(at, id, new ConcurrentHashMap<>());
+        }
+        return id == null || id.equals(entry.id) ? entry : new Entry(at, id, entry.values);
+    }
+
+    private static Long getTime(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+
+    private static final class Entry {
+
+        private static final Entry EMPTY = new Entry(null, null, new ConcurrentHashMap<>());
+
+        private final Long at;
+
+        private final Long id;
+
+        private final Map<String, Object> values;
+
+        Entry(Long at, Long id, Map<String, Object> values) {
+            this.at = at;
+            this.id = id;
+            this.values = values;
+        }
+
+        Optional<Entry> matching(Long timestamp) {
+            return at != null && at.equals(timestamp) ? Optional.of(this) : Optional.empty();
+        }
+    }
+
+    private static final class LatestValues {
+
+        private static final LatestValues EMPTY = new LatestValues(Entry.EMPTY, Entry.EMPTY);
+
+        private final Entry first;
+
+        private final Entry last;
+
+        LatestValues(Entry first, Entry last) {
+            this.first = Objects.requireNonNull(first);
+            this.last = Objects.requireNonNull(last);
+        }
+
+        LatestValues withFirst(Entry entry) {
+            return new LatestValues(entry, last);
+        }
+
+        LatestValues withLast(Entry entry) {
+            return new LatestValues(first, entry);
+        }
+    }
+
+}
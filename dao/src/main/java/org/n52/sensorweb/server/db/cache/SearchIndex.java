@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.n52.series.db.beans.DescribableEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps an in-memory {@link TermIndex} of names and identifiers per entity type, so that searches do not have
+ * to match {@code LIKE '%term%'} against whole tables. The index only narrows a search down to candidate ids,
+ * the database still applies the search filter to the candidates. Hence, stale entries never show up in search
+ * results.
+ * <p>
+ * The index of a type gets built in the background on its first search and rebuilt after {@value #TTL_KEY}
+ * seconds. Until the first build completed the database answers the searches, during rebuilds the previous
+ * index answers them. Entities inserted by this service are added once their transaction committed,
+ * see {@link #add(Class, DescribableEntity)}, entities inserted or renamed by others show up after the next
+ * rebuild. Until then, searches miss them. Names in other languages, i.e. translations, are not indexed, so
+ * searches matching a translation only miss the entity as well. Hence, the index is disabled by default and
+ * suits deployments where this service is the only writer and translations are not searched.
+ * <p>
+ * The index is enabled by a positive {@value #MAX_SIZE_KEY}, types having more entities are not indexed.
+ */
+@Component
+public class SearchIndex implements DisposableBean {
+
+    static final String MAX_SIZE_KEY = "database.cache.search.maxSize";
+
+    static final String TTL_KEY = "database.cache.search.ttl";
+
+    /**
+     * Candidate ids are queried via an {@code IN} list, which some databases limit to 1000 values. Terms
+     * matching more entities are left to the database.
+     */
+    static final int MAX_CANDIDATES = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchIndex.class);
+
+    private final Map<Class<?>, TypeIndex> indexes = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final ExecutorService executor;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SearchIndex(@Value("${" + MAX_SIZE_KEY + ":0}") int maxSize,
+            @Value("${" + TTL_KEY + ":600}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.timeToLive = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.executor = isEnabled()
+                ? Executors.newSingleThreadExecutor(new CustomizableThreadFactory("search-index-"))
+                : null;
+        LOGGER.debug("Search index {}", isEnabled() ? "of size " + maxSize : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Finds the candidates matching a search term.
+     *
+     * @param type
+     *            the searched entity type
+     * @param term
+     *            the search term
+     * @return the ids of all entities which may match the term, or {@literal null} if the index cannot answer
+     *         the search, e.g. the type is not indexed (yet) or too many entities match
+     */
+    public Set<Long> find(Class<? extends DescribableEntity> type, String term) {
+        if (!isEnabled() || type == null || !TermIndex.isIndexable(term)) {
+            return null;
+        }
+        return indexes.computeIfAbsent(type, key -> new TypeIndex(type)).find(term);
+    }
+
+    /**
+     * Adds an inserted or updated entity to the index of its type, if built or being built already. Within a
+     * transaction, the entity gets added after the transaction committed.
+     *
+     * @param type
+     *            the indexed entity type
+     * @param entity
+     *            the entity
+     */
+    public void add(Class<? extends DescribableEntity> type, DescribableEntity entity) {
+        if (type != null && entity != null && entity.getId() != null) {
+            Long id = entity.getId();
+            String text = TermIndex.normalize(entity.getName(), entity.getIdentifier());
+            TransactionCallbacks.afterCommit(() -> {
+                TypeIndex index = indexes.get(type);
+                if (index != null) {
+                    index.add(id, text);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        indexes.clear();
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private final class TypeIndex {
+
+        private final Class<? extends DescribableEntity> type;
+
+        private final Map<Long, Added> added = new ConcurrentHashMap<>();
+
+        private final AtomicLong additions = new AtomicLong();
+
+        private final AtomicBoolean building = new AtomicBoolean();
+
+        private volatile TermIndex terms;
+
+        private volatile long built = -1;
+
+        TypeIndex(Class<? extends DescribableEntity> type) {
+            this.type = type;
+        }
+
+        Set<Long> find(String term) {
+            TermIndex current = getTerms();
+            Set<Long> candidates = current != null ? current.find(term, MAX_CANDIDATES) : null;
+            if (candidates == null) {
+                return null;
+            }
+            added.forEach((id, entry) -> {
+                if (entry.text.contains(term)) {
+                    candidates.add(id);
+                }
+            });
+            return candidates.size() <= MAX_CANDIDATES ? candidates : null;
+        }
+
+        void add(Long id, String text) {
+            added.put(id, new Added(text, additions.incrementAndGet()));
+        }
+
+        private TermIndex getTerms() {
+            if (isStale() && building.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::build);
+                } catch (RejectedExecutionException e) {
+                    building.set(false);
+                }
+            }
+            return terms;
+        }
+
+        private boolean isStale() {
+            return built < 0 || System.currentTimeMillis() - built >= timeToLive;
+        }
+
+        private void build() {
+            long started = System.currentTimeMillis();
+            // entities added after this point may be missing from the loaded texts
+            long loaded = additions.get();
+            try {
+                Map<Long, String> texts = load();
+                terms = texts != null ? new TermIndex(texts) : null;
+                added.values().removeIf(entry -> entry.addition <= loaded);
+                LOGGER.debug("Indexed {} entities of type {} for search in {} ms",
+                        terms != null ? terms.size() : 0, type.getSimpleName(),
+                        System.currentTimeMillis() - started);
+            } catch (RuntimeException e) {
+                // the previous index, if any, is kept until the next attempt
+                LOGGER.warn("Could not index entities of type {} for search", type.getSimpleName(), e);
+            } finally {
+                built = started;
+                building.set(false);
+            }
+        }
+
+        private Map<Long, String> load() {
+            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Tuple> query = builder.createTupleQuery();
+            Root<? extends DescribableEntity> root = query.from(type);
+            query.multiselect(root.get(DescribableEntity.PROPERTY_ID), root.get(DescribableEntity.PROPERTY_NAME),
+                    root.get(DescribableEntity.PROPERTY_IDENTIFIER));
+            List<Tuple> rows = entityManager.createQuery(query).setMaxResults(maxSize + 1).getResultList();
+            if (rows.size() > maxSize) {
+                LOGGER.debug("Not indexing {} for search, more than {} entities", type.getSimpleName(), maxSize);
+                return null;
+            }
+            Map<Long, String> texts = new HashMap<>(rows.size() * 4 / 3 + 1);
+            for (Tuple row : rows) {
+                texts.put(row.get(0, Long.class), TermIndex.normalize(row.get(1, String.class),
+                        row.get(2, String.class)));
+            }
+            return texts;
+        }
+    }
+
+    private static final class Added {
+
+        private final String text;
+
+        private final long addition;
+
+        Added(String text, long addition) {
+            this.text = text;
+            this.addition = addition;
+        }
+    }
+
+}
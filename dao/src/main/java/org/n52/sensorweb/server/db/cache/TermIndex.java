@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable trigram index over the lower-cased names and identifiers of entities. Finding all entities
+ * containing a term only verifies the entities sharing the term's rarest trigram instead of scanning all texts.
+ * Terms shorter than a trigram are matched by scanning all texts, which is still fast for an in-memory index.
+ */
+final class TermIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private static final char SEPARATOR = '\u0000';
+
+    private static final int[] NONE = new int[0];
+
+    private final long[] ids;
+
+    private final String[] texts;
+
+    private final Map<String, int[]> postings;
+
+    /**
+     * @param texts
+     *            the {@link #normalize(String, String) normalized} texts by entity id
+     */
+    TermIndex(Map<Long, String> texts) {
+        this.ids = new long[texts.size()];
+        this.texts = new String[texts.size()];
+        Map<String, Postings> grams = new HashMap<>();
+        int position = 0;
+        for (Map.Entry<Long, String> entry : texts.entrySet()) {
+            ids[position] = entry.getKey();
+            this.texts[position] = entry.getValue();
+            String text = entry.getValue();
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                grams.computeIfAbsent(text.substring(i, i + GRAM_LENGTH), k -> new Postings()).add(position);
+            }
+            position++;
+        }
+        this.postings = new HashMap<>(grams.size() * 4 / 3 + 1);
+        grams.forEach((gram, positions) -> postings.put(gram, positions.toArray()));
+    }
+
+    /**
+     * Normalizes the searchable properties of an entity the same way the database search does, i.e. lower-cased.
+     *
+     * @param name
+     *            the name, may be {@literal null}
+     * @param identifier
+     *            the identifier, may be {@literal null}
+     * @return the text to index
+     */
+    static String normalize(String name, String identifier) {
+        return toLowerCase(name) + SEPARATOR + toLowerCase(identifier);
+    }
+
+    /**
+     * Checks if a term can be answered from the index. The database matches terms via {@code LIKE}, so terms
+     * containing wildcards have to be left to the database.
+     *
+     * @param term
+     *            the search term
+     * @return if the index can find the entities matching the term
+     */
+    static boolean isIndexable(String term) {
+        return term != null && !term.isEmpty() && term.indexOf('%') < 0 && term.indexOf('_') < 0
+                && term.indexOf('\\') < 0 && term.indexOf(SEPARATOR) < 0;
+    }
+
+    /**
+     * Finds the ids of all entities containing the term in their name or identifier.
+     *
+     * @param term
+     *            an {@link #isIndexable(String) indexable} term
+     * @param limit
+     *            the maximum number of matches
+     * @return the ids of the matching entities, or {@literal null} if more than {@code limit} entities match
+     */
+    Set<Long> find(String term, int limit) {
+        Set<Long> matches = new LinkedHashSet<>();
+        if (term.length() < GRAM_LENGTH) {
+            for (int i = 0; i < texts.length; i++) {
+                if (texts[i].contains(term) && !add(matches, ids[i], limit)) {
+                    return null;
+                }
+            }
+        } else {
+            for (int position : getCandidates(term)) {
+                if (texts[position].contains(term) && !add(matches, ids[position], limit)) {
+                    return null;
+                }
+            }
+        }
+        return matches;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    private int[] getCandidates(String term) {
+        int[] rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            int[] positions = postings.get(term.substring(i, i + GRAM_LENGTH));
+            if (positions == null) {
+                return NONE;
+            }
+            if (rarest == null || positions.length < rarest.length) {
+                rarest = positions;
+            }
+        }
+        return rarest;
+    }
+
+    private static boolean add(Set<Long> matches, long id, int limit) {
+        matches.add(id);
+        return matches.size() <= limit;
+    }
+
+    private static String toLowerCase(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static final class Postings {
+
+        private int[] positions = new int[4];
+
+        private int size;
+
+        void add(int position) {
+            // a text may contain a trigram more than once
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+
+}
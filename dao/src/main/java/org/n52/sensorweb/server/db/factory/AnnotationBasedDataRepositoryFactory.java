@@ -29,7 +29,7 @@ package org.n52.sensorweb.server.db.factory;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
@@ -54,19 +54,40 @@ public class AnnotationBasedDataRepositoryFactory implements DataRepositoryTypeF
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationBasedDataRepositoryFactory.class);
 
-    private final Map<String, ? super ValueAssembler<?, ?, ?>> cache;
-    private final Set<String> valueTypes;
-
     private final ApplicationContext appContext;
 
+    private volatile AssemblerIndex index;
+
     @Inject
     public AnnotationBasedDataRepositoryFactory(ApplicationContext appContext) {
-        this.cache = new HashMap<>();
-        this.valueTypes = new LinkedHashSet<>();
         this.appContext = appContext;
     }
 
+    /**
+     * The index is built on first use, as value assemblers may depend on this factory and are not available
+     * while it is constructed. An empty index, e.g. without an application context or looked up before any value
+     * assembler got registered, is not kept, so that it is built again on next use.
+     */
+    private AssemblerIndex getIndex() {
+        AssemblerIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = new AssemblerIndex(getAllDataAssemblers());
+                    if (!current.assemblers.isEmpty()) {
+                        index = current;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
     private Stream<ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> getAllDataAssemblers() {
+        if (appContext == null) {
+            return Stream.empty();
+        }
         Map<String, Object> beansWithAnnotation = appContext.getBeansWithAnnotation(ValueAssemblerComponent.class);
         Collection<Object> dataAssembleTypes = beansWithAnnotation.values();
         LOGGER.trace("Found following " + ValueAssemblerComponent.class.getSimpleName() + ": {}",
@@ -76,8 +97,7 @@ public class AnnotationBasedDataRepositoryFactory implements DataRepositoryTypeF
 
     @Override
     public boolean isKnown(String datasetType, String observationType, String valueType) {
-        return hasCacheEntry(datasetType, observationType, valueType) || getAllDataAssemblers().map(this::getDataType)
-                .filter(it -> it.equals(getType(datasetType, observationType, valueType))).findFirst().isPresent();
+        return hasCacheEntry(datasetType, observationType, valueType);
     }
 
     private String getType(String datasetType, String observationType, String valueType) {
@@ -101,16 +121,16 @@ public class AnnotationBasedDataRepositoryFactory implements DataRepositoryTypeF
 
     private Optional<ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> findDataAssembler(
             String datasetType, String observationType, String valueType) {
-        return getAllDataAssemblers()
-                .filter(it -> getDataType(it).equals(getType(datasetType, observationType, valueType))).findFirst();
+        return Optional.ofNullable(getIndex().assemblers.get(getType(datasetType, observationType, valueType)));
     }
 
     @Override
     public Set<String> getKnownTypes() {
-        return getAllDataAssemblers().map(this::getDataType).collect(Collectors.toSet());
+        return getIndex().assemblers.keySet();
     }
 
-    private String getDataType(ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?> assembler) {
+    private static String getDataType(
+            ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?> assembler) {
         return assembler.getClass().getAnnotation(ValueAssemblerComponent.class).value();
     }
 
@@ -118,20 +138,7 @@ public class AnnotationBasedDataRepositoryFactory implements DataRepositoryTypeF
     @SuppressWarnings("unchecked")
     public <E extends DataEntity<T>, V extends AbstractValue<?>, T> ValueAssembler<E, V, T> create(String datasetType,
             String observationType, String valueType, Class<?> entityType) {
-        Optional<ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> assembler =
-                findDataAssembler(datasetType, observationType, valueType);
-        return assembler.isPresent()
-                ? addToCache(datasetType, observationType, valueType,
-                        (ValueAssembler<DataEntity<T>, AbstractValue<?>, T>) assembler.get())
-                : null;
-    }
-
-    @SuppressWarnings("unchecked")
-    private <E extends DataEntity<T>, V extends AbstractValue<?>, T> ValueAssembler<E, V, T> addToCache(
-            String datasetType, String observationType, String valueType,
-            ValueAssembler<DataEntity<T>, AbstractValue<?>, T> assembler) {
-        cache.put(getType(datasetType, observationType, valueType), assembler);
-        return (ValueAssembler<E, V, T>) assembler;
+        return (ValueAssembler<E, V, T>) findDataAssembler(datasetType, observationType, valueType).orElse(null);
     }
 
     @Override
@@ -144,21 +151,36 @@ public class AnnotationBasedDataRepositoryFactory implements DataRepositoryTypeF
 
     @Override
     public boolean hasCacheEntry(String datasetType, String observationType, String valueType) {
-        return cache.containsKey(getType(datasetType, observationType, valueType));
+        return getIndex().assemblers.containsKey(getType(datasetType, observationType, valueType));
     }
 
     @Override
     public Set<String> getValueTypes() {
-        if (valueTypes.isEmpty()) {
-            getAllDataAssemblers().map(this::getDataType).forEach(type -> {
-                if (type.contains("-")) {
-                    valueTypes.add(type.split("-")[0]);
-                } else {
-                    valueTypes.add(type);
-                }
+        return getIndex().valueTypes;
+    }
+
+    /**
+     * Immutable index of value assemblers by their data type, e.g. {@literal quantity} or
+     * {@literal quantity-profile}.
+     */
+    private static final class AssemblerIndex {
+
+        private final Map<String, ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> assemblers;
+
+        private final Set<String> valueTypes;
+
+        AssemblerIndex(Stream<ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> all) {
+            Map<String, ValueAssembler<? extends DataEntity<?>, ? extends AbstractValue<?>, ?>> byType =
+                    new LinkedHashMap<>();
+            Set<String> types = new LinkedHashSet<>();
+            all.forEach(assembler -> {
+                String type = getDataType(assembler);
+                byType.putIfAbsent(type, assembler);
+                types.add(type.contains("-") ? type.split("-")[0] : type);
             });
+            this.assemblers = Collections.unmodifiableMap(byType);
+            this.valueTypes = Collections.unmodifiableSet(types);
         }
-        return Collections.unmodifiableSet(valueTypes);
     }
 
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.statistics;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.TemporalType;
+import javax.persistence.Tuple;
+
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
+import org.n52.sensorweb.server.db.query.DataQuerySpecifications;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Maintains an optional rollup of numerical data values per dataset and day, so that aggregations do not
+ * have to scan all observations of a dataset. Days are calendar days of the stored timestamps in the zone
+ * configured as {@code series.database.timezone}. Like the aggregation buckets, the rollup contains data
+ * neither deleted nor being a child of other data. The rollup is enabled via {@value #ENABLED_KEY} and
+ * requires the tables created by {@code src/extension/statistics/create_dataset_statistics_table.sql}.
+ *
+ * The days of a dataset are built on first use, which is marked in its own table, so that datasets without
+ * data are not built again. Builds take a shared lock on the dataset row only, waiting for transactions
+ * inserting data of the dataset. Afterwards, {@link #refresh(DatasetEntity, Date, Date)} recomputes the days
+ * touched by new data, which is done by the {@link org.n52.sensorweb.server.db.assembler.core.DatasetAssembler}
+ * for the time range of all data inserted into a dataset.
+ */
+@Component
+@SuppressFBWarnings({ "EI_EXPOSE_REP2" })
+public class DatasetStatisticsRollup {
+
+    static final String ENABLED_KEY = "database.statistics.enabled";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetStatisticsRollup.class);
+
+    private static final List<String> DAY_FIELDS = Arrays.asList("year", "month", "day");
+
+    private static final String SELECT_BUILT = "select count(*) from dataset_statistics_built"
+            + " where fk_dataset_id = ?1";
+
+    private static final String INSERT_BUILT = "insert into dataset_statistics_built (fk_dataset_id) values (?1)";
+
+    private static final String DELETE_DAYS = "delete from dataset_statistics"
+            + " where fk_dataset_id = ? and stats_day >= ? and stats_day < ?";
+
+    private static final String INSERT_DAY = "insert into dataset_statistics (fk_dataset_id, stats_day,"
+            + " value_count, value_min, value_max, value_sum, value_sum_count, first_time, first_value, last_time,"
+            + " last_value) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_TOTAL = "select coalesce(sum(value_count), 0), min(value_min),"
+            + " max(value_max), sum(value_sum), coalesce(sum(value_sum_count), 0) from dataset_statistics"
+            + " where fk_dataset_id = ?1";
+
+    private static final String SELECT_DAYS = "select first_time, last_time, value_count, value_min,"
+            + " value_max, value_sum, value_sum_count, first_value, last_value from dataset_statistics"
+            + " where fk_dataset_id = ?1 and stats_day >= ?2 and stats_day < ?3 order by stats_day";
+
+    private final boolean enabled;
+
+    private final DateTimeZone zone;
+
+    private final DbQueryFactory dbQueryFactory;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DatasetStatisticsRollup(DbQueryFactory dbQueryFactory, PlatformTransactionManager transactionManager,
+            @Value("${" + ENABLED_KEY + ":false}") boolean enabled,
+            @Value("${series.database.timezone:UTC}") String databaseTimezone) {
+        this.dbQueryFactory = dbQueryFactory;
+        this.enabled = enabled;
+        this.zone = DateTimeZone.forID(databaseTimezone);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param interval
+     *            the requested interval
+     * @return if the interval starts and ends at the beginning of a day, so that it can be answered by the
+     *         rollup
+     */
+    public boolean isAligned(Interval interval) {
+        return isStartOfDay(interval.getStart()) && isStartOfDay(interval.getEnd());
+    }
+
+    private boolean isStartOfDay(DateTime time) {
+        DateTime local = time.withZone(zone);
+        return local.equals(local.withTimeAtStartOfDay());
+    }
+
+    /**
+     * Sums up the rollup of all days of the given dataset. The rollup gets built if it does not exist yet. The
+     * average is the sum divided by the number of values not being {@literal null}, like {@code avg(value)}
+     * computes it.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @return count, minimum, maximum and sum of all values and the number of values not being
+     *         {@literal null}, or nothing if the rollup is disabled or could not be built
+     */
+    public Optional<Tuple> getTotal(DatasetEntity dataset) {
+        if (!enabled || !isBuilt(dataset)) {
+            return Optional.empty();
+        }
+        return Optional.of((Tuple) entityManager.createNativeQuery(SELECT_TOTAL, Tuple.class)
+                .setParameter(1, dataset.getId())
+                .getSingleResult());
+    }
+
+    /**
+     * Gets the rollup of each day within the given interval. The rollup gets built if it does not exist yet.
+     * Each tuple contains the earliest and latest time of the day's data, the number of data, the minimum,
+     * maximum and sum of their values, the number of values not being {@literal null} as well as the first and
+     * last value.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param interval
+     *            the interval, see {@link #isAligned(Interval)}
+     * @return the days ordered by time, or nothing if the rollup is disabled or could not be built
+     */
+    public Optional<List<Tuple>> getDays(DatasetEntity dataset, Interval interval) {
+        if (!enabled || !isBuilt(dataset)) {
+            return Optional.empty();
+        }
+        @SuppressWarnings("unchecked")
+        List<Tuple> days = entityManager.createNativeQuery(SELECT_DAYS, Tuple.class)
+                .setParameter(1, dataset.getId())
+                .setParameter(2, toCalendar(interval.getStartMillis()), TemporalType.TIMESTAMP)
+                .setParameter(3, toCalendar(interval.getEndMillis()), TemporalType.TIMESTAMP)
+                .getResultList();
+        return Optional.of(days);
+    }
+
+    private boolean isBuilt(DatasetEntity dataset) {
+        return hasBeenBuilt(dataset) || build(dataset);
+    }
+
+    private boolean hasBeenBuilt(DatasetEntity dataset) {
+        return ((Number) entityManager.createNativeQuery(SELECT_BUILT)
+                .setParameter(1, dataset.getId())
+                .getSingleResult()).longValue() > 0;
+    }
+
+    private boolean build(DatasetEntity dataset) {
+        try {
+            return transactionTemplate.execute(status -> {
+                // waits for transactions inserting data, which refresh built days only
+                DatasetEntity instance =
+                        entityManager.find(DatasetEntity.class, dataset.getId(), LockModeType.PESSIMISTIC_READ);
+                if (instance == null) {
+                    return false;
+                }
+                if (!hasBeenBuilt(instance)) {
+                    // fails if another reader builds the rollup concurrently
+                    entityManager.createNativeQuery(INSERT_BUILT).setParameter(1, instance.getId()).executeUpdate();
+                    LOGGER.debug("Building statistics rollup for dataset {}", instance.getId());
+                    if (instance.isSetFirstValueAt() && instance.isSetLastValueAt()) {
+                        refreshDays(instance, instance.getFirstValueAt(), instance.getLastValueAt());
+                    }
+                }
+                return true;
+            });
+        } catch (PersistenceException | DataAccessException e) {
+            LOGGER.debug("Could not build statistics rollup for dataset {}", dataset.getId(), e);
+            return hasBeenBuilt(dataset);
+        }
+    }
+
+    /**
+     * Recomputes the rollup of all days touched by the given time range. Does nothing if the rollup is
+     * disabled, has not been built for the dataset yet or the dataset is not numerical. Locks the dataset row.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param from
+     *            the start of the time range
+     * @param to
+     *            the end of the time range
+     */
+    public void refresh(DatasetEntity dataset, Date from, Date to) {
+        if (!enabled || !isNumerical(dataset)) {
+            return;
+        }
+        entityManager.find(DatasetEntity.class, dataset.getId(), LockModeType.PESSIMISTIC_WRITE);
+        if (hasBeenBuilt(dataset)) {
+            refreshDays(dataset, from, to);
+        }
+    }
+
+    private void refreshDays(DatasetEntity dataset, Date from, Date to) {
+        DateTime start = new DateTime(from, zone).withTimeAtStartOfDay();
+        DateTime end = new DateTime(to, zone).withTimeAtStartOfDay().plusDays(1);
+        // data at the very end would belong to the following day
+        Interval days = new Interval(start, end.minusMillis(1));
+        IoParameters parameters = IoParameters.createDefaults().extendWith(Parameters.TIMESPAN, days.toString());
+        DataQuerySpecifications dataFilterSpec = DataQuerySpecifications.of(dbQueryFactory.createFrom(parameters));
+        List<Tuple> groups = dataFilterSpec.aggregateByCalendarFields(dataset, DAY_FIELDS, entityManager);
+        Map<Long, BigDecimal> boundaryValues = new HashMap<>();
+        for (Tuple row : dataFilterSpec.matchFirstAndLastByCalendarFields(dataset, DAY_FIELDS, entityManager)) {
+            boundaryValues.putIfAbsent(row.get(0, Date.class).getTime(), toBigDecimal(row.get(1, Number.class)));
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            deleteDays(connection, dataset, start, end);
+            insertDays(connection, dataset, groups, boundaryValues);
+        });
+        LOGGER.trace("Refreshed {} days of statistics rollup for dataset {}", groups.size(), dataset.getId());
+    }
+
+    private void deleteDays(Connection connection, DatasetEntity dataset, DateTime start, DateTime end)
+            throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_DAYS)) {
+            delete.setLong(1, dataset.getId());
+            setTimestamp(delete, 2, start.getMillis());
+            setTimestamp(delete, 3, end.getMillis());
+            delete.executeUpdate();
+        }
+    }
+
+    private void insertDays(Connection connection, DatasetEntity dataset, List<Tuple> groups,
+            Map<Long, BigDecimal> boundaryValues) throws SQLException {
+        if (groups.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_DAY)) {
+            for (Tuple group : groups) {
+                Date first = group.get(0, Date.class);
+                Date last = group.get(1, Date.class);
+                insert.setLong(1, dataset.getId());
+                setTimestamp(insert, 2, new DateTime(first, zone).withTimeAtStartOfDay().getMillis());
+                insert.setLong(3, group.get(2, Number.class).longValue());
+                setDecimal(insert, 4, group.get(3, Number.class));
+                setDecimal(insert, 5, group.get(4, Number.class));
+                setDecimal(insert, 6, group.get(5, Number.class));
+                insert.setLong(7, group.get(6, Number.class).longValue());
+                setTimestamp(insert, 8, first.getTime());
+                setDecimal(insert, 9, boundaryValues.get(first.getTime()));
+                setTimestamp(insert, 10, last.getTime());
+                setDecimal(insert, 11, boundaryValues.get(last.getTime()));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Binds timestamps in the zone Hibernate binds them in, like days are selected, see
+     * {@link #toCalendar(long)}.
+     */
+    private void setTimestamp(PreparedStatement statement, int index, long millis) throws SQLException {
+        statement.setTimestamp(index, new Timestamp(millis), toCalendar(millis));
+    }
+
+    private Calendar toCalendar(long millis) {
+        Calendar calendar = Calendar.getInstance(zone.toTimeZone());
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
+    private void setDecimal(PreparedStatement statement, int index, Number value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NUMERIC);
+        } else {
+            statement.setBigDecimal(index, toBigDecimal(value));
+        }
+    }
+
+    private boolean isNumerical(DatasetEntity dataset) {
+        return ValueType.quantity.equals(dataset.getValueType()) || ValueType.count.equals(dataset.getValueType());
+    }
+
+    private BigDecimal toBigDecimal(Number value) {
+        return value == null || value instanceof BigDecimal
+                ? (BigDecimal) value
+                : new BigDecimal(value.toString());
+    }
+
+}
@@ -27,7 +27,14 @@
  */
 package org.n52.sensorweb.server.srv;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import org.n52.io.TvpDataCollection;
 import org.n52.io.handler.DatasetFactoryException;
@@ -57,10 +64,13 @@ public class DatasetService<V extends AbstractValue<?>> extends AccessService<Da
 
     private final DataRepositoryTypeFactory dataFactory;
 
+    private final ParallelQueryExecutor queryExecutor;
+
     public DatasetService(DataRepositoryTypeFactory dataFactory, DatasetAssembler<V> repository,
-            DbQueryFactory queryFactory) {
+            DbQueryFactory queryFactory, ParallelQueryExecutor queryExecutor) {
         super(repository, queryFactory);
         this.dataFactory = dataFactory;
+        this.queryExecutor = queryExecutor;
     }
 
     @Override
@@ -68,27 +78,54 @@ public class DatasetService<V extends AbstractValue<?>> extends AccessService<Da
         TvpDataCollection<Data<V>> dataCollection = new TvpDataCollection<>();
         List<DatasetTypesMetadata> datasetTypesMetadata =
                 getRepository().getDatasetTypesMetadata(dbQueryFactory.createFrom(parameters));
-        for (DatasetTypesMetadata metadata : datasetTypesMetadata) {
-            Data<V> data;
+        List<Supplier<Map<String, Data<V>>>> tasks = new ArrayList<>();
+        for (Map.Entry<List<String>, List<String>> group : groupByTypes(datasetTypesMetadata).entrySet()) {
+            List<String> types = group.getKey();
             try {
-                data = getDataFor(metadata, parameters);
-                if (data != null) {
-                    dataCollection.addNewSeries(metadata.getId(), data);
+                ValueAssembler<?, V, ?> assembler = createAssembler(types);
+                if (assembler.isBatchRetrievalSupported(dbQueryFactory.createFrom(parameters))) {
+                    tasks.add(() -> assembler.getData(group.getValue(), dbQueryFactory.createFrom(parameters)));
+                } else {
+                    // datasets are assembled one by one, so run them as separate tasks
+                    group.getValue().forEach(id -> tasks.add(() -> assembler
+                            .getData(Collections.singletonList(id), dbQueryFactory.createFrom(parameters))));
                 }
             } catch (DatasetFactoryException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                LOGGER.error("Could not get data for datasets {}", group.getValue(), e);
+            }
+        }
+        Map<String, Data<V>> data = new HashMap<>();
+        queryExecutor.invokeAll(tasks).forEach(data::putAll);
+        for (DatasetTypesMetadata metadata : datasetTypesMetadata) {
+            Data<V> datasetData = data.get(metadata.getId());
+            if (datasetData != null) {
+                dataCollection.addNewSeries(metadata.getId(), datasetData);
             }
         }
         return dataCollection;
     }
 
-    private Data<V> getDataFor(DatasetTypesMetadata metadata, IoParameters parameters) throws DatasetFactoryException {
-        DbQuery dbQuery = dbQueryFactory.createFrom(parameters);
+    /**
+     * Groups dataset ids by dataset, observation and value type, so that data of each group can be assembled
+     * by the same {@link ValueAssembler}.
+     *
+     * @param datasetTypesMetadata
+     *            the types metadata of the requested datasets
+     * @return the dataset ids grouped by types
+     */
+    private Map<List<String>, List<String>> groupByTypes(List<DatasetTypesMetadata> datasetTypesMetadata) {
+        Map<List<String>, List<String>> groups = new LinkedHashMap<>();
+        for (DatasetTypesMetadata metadata : datasetTypesMetadata) {
+            List<String> types = Arrays.asList(metadata.getDatasetType(), metadata.getObservationType(),
+                    metadata.getValueType());
+            groups.computeIfAbsent(types, k -> new ArrayList<>()).add(metadata.getId());
+        }
+        return groups;
+    }
+
+    private ValueAssembler<?, V, ?> createAssembler(List<String> types) throws DatasetFactoryException {
         Class<? extends DatasetEntity> entityType = DatasetEntity.class;
-        ValueAssembler<?, V, ?> assembler = dataFactory.create(metadata.getDatasetType(),
-                metadata.getObservationType(), metadata.getValueType(), entityType);
-        return assembler.getData(metadata.getId(), dbQuery);
+        return dataFactory.create(types.get(0), types.get(1), types.get(2), entityType);
     }
 
     private DatasetAssembler<V> getRepository() {
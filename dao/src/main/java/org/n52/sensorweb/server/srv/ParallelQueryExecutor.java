@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.srv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.n52.series.db.old.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Executes independent read tasks (e.g. assembling data of multiple datasets) on a bounded thread pool. Each
+ * task runs within its own read-only transaction, so it gets its own {@code EntityManager}. Results are
+ * returned in order of the submitted tasks.
+ *
+ * The pool size is configured via {@value #THREADS_KEY}. A value less than {@literal 2} disables parallel
+ * execution, so that all tasks run one after another within the transaction of the calling thread, or within
+ * a single read-only transaction if the calling thread has none. When executing in parallel, the calling
+ * thread runs the first task itself, so that a request takes no more connections than tasks run at once.
+ */
+@Component
+public class ParallelQueryExecutor implements DisposableBean {
+
+    static final String THREADS_KEY = "request.data.parallel.threads";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelQueryExecutor.class);
+
+    private final ExecutorService executor;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate sequentialTemplate;
+
+    public ParallelQueryExecutor(PlatformTransactionManager transactionManager,
+            @Value("${" + THREADS_KEY + ":0}") int threads) {
+        this.transactionManager = transactionManager;
+        this.transactionTemplate = createTransactionTemplate(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.sequentialTemplate = createTransactionTemplate(TransactionDefinition.PROPAGATION_REQUIRED);
+        this.executor = threads > 1
+                ? Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("parallel-query-"))
+                : null;
+        LOGGER.debug("Parallel query execution {}", executor != null ? "with " + threads + " threads" : "disabled");
+    }
+
+    /**
+     * @return if tasks are executed in parallel
+     */
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Executes all given tasks and waits for their completion.
+     *
+     * @param <T>
+     *            the type of the task results
+     * @param tasks
+     *            the tasks to execute
+     * @return the task results in order of the given tasks
+     * @throws DataAccessException
+     *             if waiting for a task got interrupted or a task failed with a checked exception, unchecked
+     *             exceptions of tasks are rethrown as they are, like when executed sequentially
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> tasks) {
+        if (!isParallel() || tasks.size() < 2) {
+            return invokeSequentially(tasks);
+        }
+        // the calling thread runs the first task itself, so that a transaction it holds does not keep a
+        // connection idle while the other tasks take connections of their own
+        List<Future<T>> futures = submitAll(tasks.subList(1, tasks.size()), transactionTemplate);
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            results.add(sequentialTemplate.execute(status -> tasks.get(0).get()));
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while waiting for parallel queries.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Executes all given tasks and waits for their completion, but at most for the given time in total. Tasks
+     * not completed in time get cancelled and have a {@literal null} result. As cancelling does not stop a
+     * running statement, the timeout also applies as transaction timeout to the tasks, which Hibernate passes
+     * on to the JDBC statements as query timeout. The timeout applies to parallel execution only.
+     *
+     * @param <T>
+     *            the type of the task results
+     * @param tasks
+     *            the tasks to execute
+     * @param timeoutMillis
+     *            the time to wait for all tasks, a value less than {@literal 1} waits without limit
+     * @return the task results in order of the given tasks
+     * @throws DataAccessException
+     *             if waiting for a task got interrupted or a task failed with a checked exception, unchecked
+     *             exceptions of tasks are rethrown as they are, like when executed sequentially
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> tasks, long timeoutMillis) {
+        if (!isParallel() || tasks.size() < 2 || timeoutMillis < 1) {
+            return invokeAll(tasks);
+        }
+        TransactionTemplate timedTemplate = createTransactionTemplate(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        timedTemplate.setTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+        List<Future<T>> futures = submitAll(tasks, timedTemplate);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(getUntil(future, deadline, timeoutMillis));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while waiting for parallel queries.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private <T> List<T> invokeSequentially(List<Supplier<T>> tasks) {
+        return sequentialTemplate.execute(status -> {
+            List<T> results = new ArrayList<>(tasks.size());
+            tasks.forEach(task -> results.add(task.get()));
+            return results;
+        });
+    }
+
+    private <T> List<Future<T>> submitAll(List<Supplier<T>> tasks, TransactionTemplate template) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Supplier<T> task : tasks) {
+            futures.add(executor.submit(() -> template.execute(status -> task.get())));
+        }
+        return futures;
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new DataAccessException("Could not execute parallel queries.", cause);
+    }
+
+    private <T> T getUntil(Future<T> future, long deadline, long timeoutMillis)
+            throws InterruptedException, ExecutionException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Parallel query did not complete within {} ms and got cancelled.", timeoutMillis);
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    private TransactionTemplate createTransactionTemplate(int propagation) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setPropagationBehavior(propagation);
+        return template;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -27,11 +27,16 @@
  */
 package org.n52.sensorweb.server.srv;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.n52.io.request.IoParameters;
 import org.n52.io.response.CategoryOutput;
@@ -60,14 +65,22 @@ import org.n52.series.spi.search.SearchResult;
 import org.n52.series.spi.search.SearchService;
 import org.n52.series.spi.search.ServiceSearchResult;
 import org.n52.series.spi.search.TagSearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 @Component
 public class Search implements SearchService {
 
+    static final String TIMEOUT_KEY = "request.search.parallel.timeout";
+
+    private static final long DEFAULT_TIMEOUT = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Search.class);
+
     private final OutputAssembler<ProcedureOutput> procedureRepository;
 
     private final OutputAssembler<PhenomenonOutput> phenomenonRepository;
@@ -92,6 +105,11 @@ public class Search implements SearchService {
 
     private Optional<OutputAssembler<MeasuringProgramOutput>> measuringProgramRepository;
 
+    private final ParallelQueryExecutor queryExecutor;
+
+    @Value("${" + TIMEOUT_KEY + ":" + DEFAULT_TIMEOUT + "}")
+    private long timeout = DEFAULT_TIMEOUT;
+
     @SuppressFBWarnings({ "EI_EXPOSE_REP2" })
     public Search(OutputAssembler<ProcedureOutput> procedureRepository,
             OutputAssembler<PhenomenonOutput> phenomenonRepository,
@@ -104,7 +122,8 @@ public class Search implements SearchService {
             OutputAssembler<ServiceOutput> serviceRepository,
             DbQueryFactory dbQueryFactory,
             Optional<OutputAssembler<SamplingOutput>> samplingRepository,
-            Optional<OutputAssembler<MeasuringProgramOutput>> measuringProgramRepository) {
+            Optional<OutputAssembler<MeasuringProgramOutput>> measuringProgramRepository,
+            ParallelQueryExecutor queryExecutor) {
         this.procedureRepository = procedureRepository;
         this.phenomenonRepository = phenomenonRepository;
         this.featureRepository = featureRepository;
@@ -117,68 +136,56 @@ public class Search implements SearchService {
         this.samplingRepository = samplingRepository;
         this.measuringProgramRepository = measuringProgramRepository;
         this.dbQueryFactory = dbQueryFactory;
+        this.queryExecutor = queryExecutor;
     }
 
+    /**
+     * Searches all requested resource types. If the {@link ParallelQueryExecutor} runs in parallel, each
+     * resource type is searched in its own read-only transaction and all searches share a timeout of
+     * {@value #TIMEOUT_KEY} milliseconds. Results of searches not completed in time are left out and get
+     * logged. No transaction is held while searching, so that parallel searches take one connection each.
+     */
     @Override
-    @Transactional(readOnly = true)
     public Collection<SearchResult> searchResources(IoParameters parameters) {
-        Set<SearchResult> results = new HashSet<>();
         Set<String> types = parameters.getSearchTypes();
         DbQuery query = dbQueryFactory.createFrom(parameters);
-        if (types != null && types.isEmpty()) {
-            results.addAll(phenomenonRepository.searchFor(query));
-            results.addAll(procedureRepository.searchFor(query));
-            results.addAll(featureRepository.searchFor(query));
-            results.addAll(categoryRepository.searchFor(query));
-            results.addAll(platformRepository.searchFor(query));
-            results.addAll(datasetRepository.searchFor(query));
-            results.addAll(offeringRepository.searchFor(query));
-            results.addAll(tagRepository.searchFor(query));
-            results.addAll(serviceRepository.searchFor(query));
-            if (samplingRepository.isPresent()) {
-                results.addAll(samplingRepository.get().searchFor(query));
-            }
-            if (measuringProgramRepository.isPresent()) {
-                results.addAll(measuringProgramRepository.get().searchFor(query));
-            }
-        } else {
-            if (checkType(PhenomenonSearchResult.TYPE, types)) {
-                results.addAll(phenomenonRepository.searchFor(query));
-            }
-            if (checkType(ProcedureSearchResult.TYPE, types)) {
-                results.addAll(procedureRepository.searchFor(query));
-            }
-            if (checkType(FeatureSearchResult.TYPE, types)) {
-                results.addAll(featureRepository.searchFor(query));
-            }
-            if (checkType(CategorySearchResult.TYPE, types)) {
-                results.addAll(categoryRepository.searchFor(query));
-            }
-            if (checkType(PlatformSearchResult.TYPE, types)) {
-                results.addAll(platformRepository.searchFor(query));
-            }
-            if (checkType(DatasetSearchResult.TYPE, types)) {
-                results.addAll(datasetRepository.searchFor(query));
-            }
-            if (checkType(OfferingSearchResult.TYPE, types)) {
-                results.addAll(offeringRepository.searchFor(query));
-            }
-            if (checkType(TagSearchResult.TYPE, types)) {
-                results.addAll(tagRepository.searchFor(query));
-            }
-            if (checkType(ServiceSearchResult.TYPE, types)) {
-                results.addAll(serviceRepository.searchFor(query));
-            }
-            if (samplingRepository.isPresent() && checkType(SamplingSearchResult.TYPE, types)) {
-                results.addAll(samplingRepository.get().searchFor(query));
-            }
-            if (measuringProgramRepository.isPresent() && checkType(MeasuringProgramSearchResult.TYPE, types)) {
-                results.addAll(measuringProgramRepository.get().searchFor(query));
+        Map<String, Supplier<Collection<SearchResult>>> searches = new LinkedHashMap<>();
+        addSearch(searches, PhenomenonSearchResult.TYPE, types, phenomenonRepository, query);
+        addSearch(searches, ProcedureSearchResult.TYPE, types, procedureRepository, query);
+        addSearch(searches, FeatureSearchResult.TYPE, types, featureRepository, query);
+        addSearch(searches, CategorySearchResult.TYPE, types, categoryRepository, query);
+        addSearch(searches, PlatformSearchResult.TYPE, types, platformRepository, query);
+        addSearch(searches, DatasetSearchResult.TYPE, types, datasetRepository, query);
+        addSearch(searches, OfferingSearchResult.TYPE, types, offeringRepository, query);
+        addSearch(searches, TagSearchResult.TYPE, types, tagRepository, query);
+        addSearch(searches, ServiceSearchResult.TYPE, types, serviceRepository, query);
+        samplingRepository.ifPresent(it -> addSearch(searches, SamplingSearchResult.TYPE, types, it, query));
+        measuringProgramRepository
+                .ifPresent(it -> addSearch(searches, MeasuringProgramSearchResult.TYPE, types, it, query));
+
+        List<String> searchTypes = new ArrayList<>(searches.keySet());
+        List<Collection<SearchResult>> searchResults =
+                queryExecutor.invokeAll(new ArrayList<>(searches.values()), timeout);
+        Set<SearchResult> results = new HashSet<>();
+        for (int i = 0; i < searchResults.size(); i++) {
+            if (searchResults.get(i) != null) {
+                results.addAll(searchResults.get(i));
+            } else {
+                LOGGER.warn("Search for '{}' did not complete within {} ms, its results are left out.",
+                        searchTypes.get(i), timeout);
             }
         }
         return results;
     }
 
+    private void addSearch(Map<String, Supplier<Collection<SearchResult>>> searches, String type,
+            Set<String> types, OutputAssembler<?> repository, DbQuery query) {
+        // an empty set of types searches all types
+        if (types != null && types.isEmpty() || checkType(type, types)) {
+            searches.put(type, () -> repository.searchFor(query));
+        }
+    }
+
     private boolean checkType(String type, Set<String> types) {
         return types != null && types.contains(type.toLowerCase(Locale.ROOT));
     }
@@ -28,6 +28,12 @@
 package org.n52.sensorweb.server.srv;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import org.n52.io.TvpDataCollection;
 import org.n52.io.handler.DatasetFactoryException;
@@ -55,30 +61,40 @@ public class TimeseriesAccessService extends AccessService<TimeseriesMetadataOut
 
     private final DataRepositoryTypeFactory factory;
 
+    private final ParallelQueryExecutor queryExecutor;
+
     public TimeseriesAccessService(DataRepositoryTypeFactory factory,
                                    DatasetAssembler repository,
-                                   DbQueryFactory queryFactory) {
+                                   DbQueryFactory queryFactory,
+                                   ParallelQueryExecutor queryExecutor) {
         super(repository, queryFactory);
         this.factory = factory;
+        this.queryExecutor = queryExecutor;
     }
 
     @Override
     public DataCollection<Data<QuantityValue>> getData(IoParameters parameters) {
         TvpDataCollection<Data<QuantityValue>> dataCollection = new TvpDataCollection<>();
+        ValueAssembler<QuantityDataEntity, QuantityValue, BigDecimal> assembler = createRepository();
+        List<Supplier<Map<String, Data<QuantityValue>>>> tasks = new ArrayList<>();
+        if (assembler.isBatchRetrievalSupported(dbQueryFactory.createFrom(parameters))) {
+            tasks.add(() -> assembler.getData(parameters.getDatasets(), dbQueryFactory.createFrom(parameters)));
+        } else {
+            // timeseries are assembled one by one, so run them as separate tasks
+            parameters.getDatasets().forEach(id -> tasks.add(() -> assembler
+                    .getData(Collections.singletonList(id), dbQueryFactory.createFrom(parameters))));
+        }
+        Map<String, Data<QuantityValue>> data = new HashMap<>();
+        queryExecutor.invokeAll(tasks).forEach(data::putAll);
         for (String timeseriesId : parameters.getDatasets()) {
-            Data<QuantityValue> data = getDataFor(timeseriesId, parameters);
-            if (data != null) {
-                dataCollection.addNewSeries(timeseriesId, data);
+            Data<QuantityValue> timeseriesData = data.get(timeseriesId);
+            if (timeseriesData != null) {
+                dataCollection.addNewSeries(timeseriesId, timeseriesData);
             }
         }
         return dataCollection;
     }
 
-    private Data<QuantityValue> getDataFor(String timeseriesId, IoParameters parameters) {
-        DbQuery dbQuery = dbQueryFactory.createFrom(parameters);
-        return createRepository().getData(timeseriesId, dbQuery);
-    }
-
     private ValueAssembler<QuantityDataEntity, QuantityValue, BigDecimal> createRepository() {
         try {
             return factory.create(DatasetType.timeseries.name(), ObservationType.simple.name(), QuantityValue.TYPE,
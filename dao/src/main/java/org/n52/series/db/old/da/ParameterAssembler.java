@@ -96,7 +96,8 @@ public abstract class ParameterAssembler<E extends DescribableEntity, O extends
     }
 
     protected List<O> createCondensed(Collection<E> allInstances, DbQuery query, Session session) {
-        List<O> result = allInstances.parallelStream().map(entity -> getOutputMapper(query).createCondensed(entity))
+        ParameterOutputSearchResultMapper<E, O> mapper = getOutputMapper(query);
+        List<O> result = allInstances.parallelStream().map(entity -> mapper.createCondensed(entity))
                 .filter(Objects::nonNull).collect(Collectors.toList());
         return result;
     }
@@ -109,7 +110,8 @@ public abstract class ParameterAssembler<E extends DescribableEntity, O extends
 
     protected List<O> createExpanded(Collection<E> allInstances, DbQuery query, Session session) {
         LOGGER.debug("Entities: " + allInstances.size());
-        List<O> result = allInstances.parallelStream().map(e -> getOutputMapper(query).createExpanded(e))
+        ParameterOutputSearchResultMapper<E, O> mapper = getOutputMapper(query);
+        List<O> result = allInstances.parallelStream().map(e -> mapper.createExpanded(e))
                 .filter(Objects::nonNull).collect(Collectors.toList());
         LOGGER.debug("Ouput: " + result.size());
         return result;
@@ -129,7 +131,8 @@ public abstract class ParameterAssembler<E extends DescribableEntity, O extends
         List<E> allInstances = getAllInstances(query, session);
         long start = System.currentTimeMillis();
         try {
-            List<O> result = allInstances.parallelStream().map(entity -> getOutputMapper(query).createExpanded(entity))
+            ParameterOutputSearchResultMapper<E, O> mapper = getOutputMapper(query);
+            List<O> result = allInstances.parallelStream().map(entity -> mapper.createExpanded(entity))
                     .filter(Objects::nonNull).collect(Collectors.toList());
             return result;
         } finally {
@@ -43,7 +43,9 @@ import org.n52.io.response.DetectionLimitOutput;
 import org.n52.io.response.TimeOutput;
 import org.n52.io.response.dataset.AbstractValue;
 import org.n52.io.response.dataset.Data;
+import org.n52.sensorweb.server.db.assembler.value.PagedData;
 import org.n52.sensorweb.server.db.assembler.value.ValueConnector;
+import org.n52.sensorweb.server.db.old.dao.DataPageToken;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.old.dao.DbQueryFactory;
 import org.n52.series.db.beans.DataEntity;
@@ -66,13 +68,24 @@ public abstract class AbstractDataRepository<E extends DataEntity<T>, V extends
     public Data<V> getData(String datasetId, DbQuery dbQuery) {
         Session session = getSession();
         try {
-            return dbQuery.isExpanded() ? assembleExpandedData(Long.parseLong(datasetId), dbQuery, session)
-                    : assembleData(Long.parseLong(datasetId), dbQuery, session);
+            Long dataset = Long.parseLong(datasetId);
+            Data<V> data = dbQuery.isExpanded() ? assembleExpandedData(dataset, dbQuery, session)
+                    : assembleData(dataset, dbQuery, session);
+            return dbQuery.isDataPaging() ? toDataPage(data, dataset, dbQuery, session) : data;
         } finally {
             returnSession(session);
         }
     }
 
+    private Data<V> toDataPage(Data<V> data, Long dataset, DbQuery dbQuery, Session session) {
+        PagedData<V> page = new PagedData<>();
+        page.addData(data);
+        page.setMetadata(data.getMetadata());
+        DataPageToken token = createDataDao(session).getNextPageToken(dataset, dbQuery);
+        page.setNextPageToken(token != null ? token.encode() : null);
+        return page;
+    }
+
     protected Data<V> assembleExpandedData(DatasetEntity dataset, DbQuery dbQuery, Session session) {
         return assembleExpandedData(dataset.getId(), dbQuery, session);
     }
@@ -43,6 +43,7 @@ import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
 import org.joda.time.DateTime;
 import org.n52.io.request.IoParameters;
+import org.n52.sensorweb.server.db.old.dao.DataPageToken;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
 import org.n52.sensorweb.server.db.old.dao.QueryUtils;
 import org.n52.series.db.beans.DataEntity;
@@ -121,10 +122,43 @@ public class DataDao<T extends DataEntity> extends AbstractDao<T> {
     public List<T> getAllInstancesFor(Long dataset, DbQuery q) {
         DbQuery query = checkLevelParameterForHierarchyQuery(q);
         LOGGER.debug("get all instances for series '{}': {}", dataset, query);
+        return createDataPageCriteria(dataset, query).list();
+    }
+
+    /**
+     * Determines the token of the page following the one returned by {@link #getAllInstancesFor(Long, DbQuery)}.
+     * Only the keys of the last entity of the page and of its successor are read.
+     *
+     * @param dataset
+     *        the dataset the observations belongs to.
+     * @param q
+     *        the paging query.
+     * @return the token of the next page or {@literal null} if there is no further data
+     */
+    public DataPageToken getNextPageToken(Long dataset, DbQuery q) {
+        DbQuery query = checkLevelParameterForHierarchyQuery(q);
+        if (!query.isDataPaging()) {
+            return null;
+        }
+        Criteria criteria = createDataPageCriteria(dataset, query)
+                .setProjection(Projections.projectionList()
+                        .add(Projections.property(DataEntity.PROPERTY_SAMPLING_TIME_END))
+                        .add(Projections.property(DataEntity.PROPERTY_ID)))
+                .setFirstResult(query.getDataPageSize() - 1)
+                .setMaxResults(2);
+        List<?> keys = criteria.list();
+        if (keys.size() < 2) {
+            return null;
+        }
+        Object[] last = (Object[]) keys.get(0);
+        return new DataPageToken(dataset, ((Date) last[0]).getTime(), ((Number) last[1]).longValue());
+    }
+
+    private Criteria createDataPageCriteria(Long dataset, DbQuery query) {
         Criteria criteria = getDefaultCriteria(query);
         criteria.createCriteria(DataEntity.PROPERTY_DATASET).add(Restrictions.eq(DatasetEntity.PROPERTY_ID, dataset));
         query.addTimespanTo(criteria);
-        return criteria.list();
+        return query.addDataPageTo(dataset, criteria);
     }
 
     public List<DataEntity<?>> getAllInstancesFor(Set<Long> series, DbQuery query) {
@@ -134,31 +168,23 @@ public class DataDao<T extends DataEntity> extends AbstractDao<T> {
         return criteria.list();
     }
 
-    @SuppressWarnings("unchecked")
     public T getClosestOuterPreviousValue(final DatasetEntity dataset, final DateTime lowerBound, final DbQuery query) {
         final String column = DataEntity.PROPERTY_SAMPLING_TIME_START;
-
-        DetachedCriteria baseFilter = createBaseClosedDataCriteria(dataset, query);
-        baseFilter.add(Restrictions.lt(column, lowerBound.toDate()));
-        baseFilter.setProjection(Projections.max(column));
-        DetachedCriteria filter = createClosedDataCriteria(column, dataset, query, baseFilter);
-        Criteria criteria = getDefaultCriteria();
-        criteria.add(Subqueries.propertyEq(DataEntity.PROPERTY_ID, filter));
-        return (T) criteria.uniqueResult();
+        Criteria criteria = createClosedDataCriteria(dataset, query, Order.desc(column));
+        criteria.add(Restrictions.lt(column, lowerBound.toDate()));
+        return getFirstResult(criteria);
     }
 
-    @SuppressWarnings("unchecked")
     public T getClosestOuterNextValue(final DatasetEntity dataset, final DateTime upperBound, final DbQuery query) {
         final String column = DataEntity.PROPERTY_SAMPLING_TIME_START;
+        Criteria criteria = createClosedDataCriteria(dataset, query, Order.asc(column));
+        criteria.add(Restrictions.gt(column, upperBound.toDate()));
+        return getFirstResult(criteria);
+    }
 
-        DetachedCriteria baseFilter = createBaseClosedDataCriteria(dataset, query);
-        baseFilter.add(Restrictions.gt(column, upperBound.toDate()));
-        baseFilter.setProjection(Projections.min(column));
-        DetachedCriteria filter = createClosedDataCriteria(column, dataset, query, baseFilter);
-
-        Criteria criteria = getDefaultCriteria();
-        criteria.add(Subqueries.propertyEq(DataEntity.PROPERTY_ID, filter));
-        return (T) criteria.uniqueResult();
+    @SuppressWarnings("unchecked")
+    private T getFirstResult(Criteria criteria) {
+        return (T) criteria.setMaxResults(1).uniqueResult();
     }
 
     @Override
@@ -274,30 +300,20 @@ public class DataDao<T extends DataEntity> extends AbstractDao<T> {
         return criteria;
     }
 
-    private DetachedCriteria createBaseClosedDataCriteria(DatasetEntity dataset, DbQuery query) {
-        DetachedCriteria criteria = DetachedCriteria.forClass(entityType);
+    /**
+     * Creates the criteria of data closest to a bound, ordered so that the closest data comes first. Among data
+     * of the same sampling time the newest result time wins, unless result times are filtered.
+     */
+    private Criteria createClosedDataCriteria(DatasetEntity dataset, DbQuery query, Order order) {
+        Criteria criteria = session.createCriteria(entityType);
         query.addSpatialFilter(criteria);
         query.addResultTimeFilter(criteria);
         criteria.add(Restrictions.eq(DataEntity.PROPERTY_DATASET, dataset));
         criteria.add(Restrictions.isNull(DataEntity.PROPERTY_PARENT));
         criteria.add(Restrictions.eq(DataEntity.PROPERTY_DELETED, Boolean.FALSE));
-        return criteria;
-    }
-
-    private DetachedCriteria createClosedDataCriteria(String column, DatasetEntity dataset, DbQuery query,
-            DetachedCriteria filter) {
-        DetachedCriteria criteria = createBaseClosedDataCriteria(dataset, query);
-        criteria.add(Subqueries.propertyEq(column, filter));
-        criteria.setProjection(Projections.property(DataEntity.PROPERTY_ID));
+        criteria.addOrder(order);
         IoParameters parameters = query.getParameters();
-        if (parameters.isAllResultTimes()) {
-            // no filter needed
-            return criteria;
-        } else if (!parameters.getResultTimes()
-                              .isEmpty()) {
-            // filter based on given result times
-            return query.addResultTimeFilter(criteria);
-        } else {
+        if (!parameters.isAllResultTimes() && parameters.getResultTimes().isEmpty()) {
             // values for newest result time
             criteria.addOrder(Order.desc(DataEntity.PROPERTY_RESULT_TIME));
         }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.io.extension.aggregation;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.web.exception.BadRequestException;
+
+public class AggregationPeriodTest {
+
+    @Test
+    public void when_alias_then_groupedByCalendarFieldsOfUnit() {
+        Assertions.assertEquals(Arrays.asList("year", "month"), AggregationPeriod.parse("monthly")
+                .getCalendarFields());
+        Assertions.assertEquals(Arrays.asList("year", "month", "day"), AggregationPeriod.parse("weekly")
+                .getCalendarFields());
+    }
+
+    @Test
+    public void when_isoPeriod_then_groupedByFinestUnit() {
+        Assertions.assertEquals(Arrays.asList("year", "month", "day", "hour", "minute"),
+                AggregationPeriod.parse("PT15M").getCalendarFields());
+    }
+
+    @Test
+    public void when_invalidPeriod_then_exception() {
+        Assertions.assertThrows(BadRequestException.class, () -> AggregationPeriod.parse("PT0S"));
+        Assertions.assertThrows(BadRequestException.class, () -> AggregationPeriod.parse("PT0.5S"));
+        Assertions.assertThrows(BadRequestException.class, () -> AggregationPeriod.parse("fortnightly"));
+    }
+
+    @Test
+    public void when_monthly_then_bucketsAlignedToCalendarMonths() {
+        AggregationPeriod period = AggregationPeriod.parse("P1M");
+        DateTime start = new DateTime(2020, 1, 15, 12, 30, DateTimeZone.UTC);
+        DateTime first = period.getFirstBucketStart(start, DateTimeZone.UTC);
+        Assertions.assertEquals(new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC), first);
+        Assertions.assertEquals(new DateTime(2020, 3, 1, 0, 0, DateTimeZone.UTC),
+                period.getBucketStart(first, 2));
+    }
+
+    @Test
+    public void when_weekly_then_bucketsAlignedToIsoWeeks() {
+        AggregationPeriod period = AggregationPeriod.parse("weekly");
+        // a Wednesday
+        DateTime start = new DateTime(2020, 1, 15, 12, 30, DateTimeZone.UTC);
+        DateTime first = period.getFirstBucketStart(start, DateTimeZone.UTC);
+        Assertions.assertEquals(new DateTime(2020, 1, 13, 0, 0, DateTimeZone.UTC), first);
+        Assertions.assertEquals(new DateTime(2020, 1, 20, 0, 0, DateTimeZone.UTC),
+                period.getBucketStart(first, 1));
+    }
+
+    @Test
+    public void when_daily_then_bucketsAlignedInGivenZone() {
+        AggregationPeriod period = AggregationPeriod.parse("daily");
+        DateTime start = new DateTime(2020, 1, 15, 0, 30, DateTimeZone.forOffsetHours(2));
+        Assertions.assertEquals(new DateTime(2020, 1, 14, 0, 0, DateTimeZone.UTC),
+                period.getFirstBucketStart(start, DateTimeZone.UTC));
+    }
+
+}
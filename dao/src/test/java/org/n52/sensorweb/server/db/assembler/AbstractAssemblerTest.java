@@ -49,7 +49,8 @@ public abstract class AbstractAssemblerTest extends TestBase {
     @SpringBootConfiguration
     @EnableJpaRepositories(basePackages = "org.n52.sensorweb.server.db",
             repositoryFactoryBeanClass = EntityGraphJpaRepositoryFactoryBean.class)
-    @ComponentScan(basePackages = { "org.n52.sensorweb.server.db.assembler", "org.n52.sensorweb.server.db.factory" })
+    @ComponentScan(basePackages = { "org.n52.sensorweb.server.db.assembler", "org.n52.sensorweb.server.db.factory",
+        "org.n52.sensorweb.server.db.cache", "org.n52.sensorweb.server.db.statistics" })
     static class Config extends TestRepositoryConfig<DatasetEntity> {
         public Config() {
             super("/mapping/core/persistence.xml");
@@ -33,6 +33,7 @@ import static org.n52.io.request.Parameters.HREF_BASE;
 import static org.n52.io.request.Parameters.MATCH_DOMAIN_IDS;
 import static org.n52.sensorweb.server.test.TestUtils.getIdAsString;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
@@ -196,6 +197,20 @@ public class OfferingAssemblerTest extends AbstractAssemblerTest {
         });
     }
 
+    @Test
+    public void when_offeringsResolvedTogether_then_equalOfferingsInsertedOnce() {
+        OfferingEntity existing = testRepositories.upsertSimpleOffering("of1");
+
+        List<OfferingEntity> instances =
+                assembler.getOrInsertInstances(Arrays.asList(offering("of1"), offering("of2"), offering("of2")));
+
+        Assertions.assertEquals(3, instances.size());
+        Assertions.assertEquals(existing.getId(), instances.get(0).getId());
+        Assertions.assertNotNull(instances.get(1).getId());
+        Assertions.assertSame(instances.get(1), instances.get(2));
+        Assertions.assertEquals(2, repository.count());
+    }
+
     @Test
     public void insert_offering_with_translation() {
         final String offeringIdentifier = "off";
@@ -233,4 +248,11 @@ public class OfferingAssemblerTest extends AbstractAssemblerTest {
         Assertions.assertFalse(deleted.isPresent());
     }
 
+    private OfferingEntity offering(String identifier) {
+        OfferingEntity entity = new OfferingEntity();
+        entity.setIdentifier(identifier);
+        entity.setName(identifier);
+        return entity;
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.core;
+
+import java.util.Date;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.n52.sensorweb.server.db.assembler.AbstractAssemblerTest;
+import org.n52.series.db.beans.DatasetEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs without a test transaction, as coalesced updates are written when the transaction commits.
+ */
+@DataJpaTest(properties = DatasetAssembler.COALESCE_UPDATES_KEY + "=true")
+@ExtendWith(SpringExtension.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DatasetAssemblerTest extends AbstractAssemblerTest {
+
+    private static final DateTime TIME = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    @Autowired
+    private DatasetAssembler<?> datasetAssembler;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void enableStatistics() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    public void when_updatedTwiceInTransaction_then_mergedAndWrittenOnceAtCommit() {
+        DatasetEntity dataset = quantityDataset("ph1", "of1", "pr1", "format1", "fe1", "format2");
+        statistics.clear();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            DatasetEntity instance = entityManager.find(DatasetEntity.class, dataset.getId());
+            datasetAssembler.updateFirstLastValues(instance, values(TIME.plusHours(1), TIME.plusHours(2)));
+            datasetAssembler.updateFirstLastValues(instance, values(TIME, TIME.plusHours(1)));
+            // not applied until the transaction commits
+            Assertions.assertFalse(instance.isSetFirstValueAt());
+            Assertions.assertEquals(0L, statistics.getEntityUpdateCount());
+        });
+
+        Assertions.assertEquals(1L, statistics.getEntityUpdateCount());
+        DatasetEntity updated = transactionTemplate
+                .execute(status -> entityManager.find(DatasetEntity.class, dataset.getId()));
+        Assertions.assertEquals(TIME.toDate().getTime(), updated.getFirstValueAt().getTime());
+        Assertions.assertEquals(TIME.plusHours(2).toDate().getTime(), updated.getLastValueAt().getTime());
+    }
+
+    @Test
+    public void when_rolledBack_then_nothingApplied() {
+        DatasetEntity dataset = quantityDataset("ph2", "of2", "pr2", "format1", "fe2", "format2");
+        statistics.clear();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            DatasetEntity instance = entityManager.find(DatasetEntity.class, dataset.getId());
+            datasetAssembler.updateFirstLastValues(instance, values(TIME, TIME.plusHours(1)));
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertEquals(0L, statistics.getEntityUpdateCount());
+        DatasetEntity unchanged = transactionTemplate
+                .execute(status -> entityManager.find(DatasetEntity.class, dataset.getId()));
+        Assertions.assertFalse(unchanged.isSetFirstValueAt());
+        Assertions.assertFalse(unchanged.isSetLastValueAt());
+    }
+
+    private DatasetEntity values(DateTime first, DateTime last) {
+        DatasetEntity values = new DatasetEntity();
+        values.setFirstValueAt(new Date(first.getMillis()));
+        values.setLastValueAt(new Date(last.getMillis()));
+        return values;
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.value;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.io.response.dataset.Data;
+import org.n52.io.response.dataset.count.CountValue;
+import org.n52.sensorweb.server.db.assembler.AbstractAssemblerTest;
+import org.n52.sensorweb.server.db.old.dao.DbQuery;
+import org.n52.sensorweb.server.db.old.dao.DefaultDbQueryFactory;
+import org.n52.sensorweb.server.db.repositories.core.DataRepository;
+import org.n52.sensorweb.server.db.repositories.core.DatasetRepository;
+import org.n52.series.db.beans.CountDataEntity;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.UnitEntity;
+import org.n52.series.db.beans.dataset.DatasetType;
+import org.n52.series.db.beans.dataset.ObservationType;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+@DataJpaTest
+public class CountValueAssemblerTest extends AbstractAssemblerTest {
+
+    private static final Date TIME = new Date(1577880000000L);
+
+    @Autowired
+    private DataRepository<CountDataEntity> dataRepository;
+
+    @Autowired
+    private DatasetRepository datasetRepository;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Test
+    public void when_dataOfDatasetsRequestedTogether_then_mappedByRequestedIds() {
+        DatasetEntity stored = countDataset("ph1", "of1", "pr1");
+        DatasetEntity connected = countDataset("ph2", "of2", "pr2");
+        entityManager.persist(createData(stored, 1));
+        entityManager.flush();
+        ConnectedAssembler assembler = new ConnectedAssembler(connected.getId());
+        beanFactory.autowireBean(assembler);
+        // prefixed ids are accepted, but differ from the database id
+        String storedId = "dataset_" + stored.getId();
+        String connectedId = connected.getId().toString();
+        DbQuery query = new DefaultDbQueryFactory().createFrom(IoParameters.createDefaults()
+                .extendWith(Parameters.TIMESPAN, "2020-01-01T00:00:00Z/2020-01-02T00:00:00Z"));
+
+        Assertions.assertTrue(assembler.isBatchRetrievalSupported(query));
+        Map<String, Data<CountValue>> data = assembler.getData(Arrays.asList(connectedId, storedId), query);
+
+        Assertions.assertEquals(Arrays.asList(connectedId, storedId), Arrays.asList(data.keySet().toArray()));
+        Assertions.assertEquals(1, data.get(storedId).getValues().size());
+        Assertions.assertEquals(Integer.valueOf(1), data.get(storedId).getValues().iterator().next().getValue());
+        Assertions.assertEquals(1, data.get(connectedId).getValues().size());
+        Assertions.assertEquals(Integer.valueOf(42),
+                data.get(connectedId).getValues().iterator().next().getValue());
+    }
+
+    private DatasetEntity countDataset(String phenomenon, String offering, String procedure) {
+        return testRepositories.persistSimpleDataset(phenomenon, offering, procedure, "format1", "fe1", "format2",
+                new DatasetEntity(DatasetType.timeseries, ObservationType.simple, ValueType.count));
+    }
+
+    private static CountDataEntity createData(DatasetEntity dataset, int value) {
+        CountDataEntity data = new CountDataEntity();
+        data.setDataset(dataset);
+        data.setValue(value);
+        data.setSamplingTimeStart(TIME);
+        data.setSamplingTimeEnd(TIME);
+        data.setResultTime(TIME);
+        data.setStaIdentifier(UUID.randomUUID().toString());
+        return data;
+    }
+
+    /**
+     * Reads the data of one dataset from a connector instead of the database.
+     */
+    private final class ConnectedAssembler extends CountValueAssembler {
+
+        private final Long connectedId;
+
+        ConnectedAssembler(Long connectedId) {
+            super(dataRepository, datasetRepository);
+            this.connectedId = connectedId;
+        }
+
+        @Override
+        public boolean hasConnector(DatasetEntity entity) {
+            return connectedId.equals(entity.getId());
+        }
+
+        @Override
+        public ValueConnector getConnector(DatasetEntity entity) {
+            return new ValueConnector() {
+
+                @Override
+                public List<DataEntity<?>> getObservations(DatasetEntity dataset, DbQuery query) {
+                    return Collections.singletonList(createData(dataset, 42));
+                }
+
+                @Override
+                public UnitEntity getUom(DatasetEntity dataset) {
+                    return null;
+                }
+
+                @Override
+                public Optional<DataEntity<?>> getFirstObservation(DatasetEntity dataset) {
+                    return Optional.empty();
+                }
+
+                @Override
+                public Optional<DataEntity<?>> getLastObservation(DatasetEntity dataset) {
+                    return Optional.empty();
+                }
+            };
+        }
+    }
+
+}
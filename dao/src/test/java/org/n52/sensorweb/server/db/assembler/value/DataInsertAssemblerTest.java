@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.value;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.n52.sensorweb.server.db.assembler.AbstractAssemblerTest;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@DataJpaTest(properties = DataInsertAssembler.BATCH_SIZE_KEY + "=2")
+@ExtendWith(SpringExtension.class)
+public class DataInsertAssemblerTest extends AbstractAssemblerTest {
+
+    @Autowired
+    private DataInsertAssembler assembler;
+
+    @Test
+    public void when_moreDataThanBatchSize_then_allInsertedAndDetached() {
+        DatasetEntity dataset = quantityDataset("ph1", "of1", "pr1", "format1", "fe1", "format2");
+        List<QuantityDataEntity> data = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            data.add(createData(dataset, i));
+        }
+
+        List<QuantityDataEntity> inserted = assembler.insertAll(data);
+
+        Assertions.assertEquals(data, inserted);
+        for (int i = 0; i < inserted.size(); i++) {
+            QuantityDataEntity value = inserted.get(i);
+            Assertions.assertNotNull(value.getId());
+            Assertions.assertFalse(entityManager.contains(value));
+            QuantityDataEntity persisted = entityManager.find(QuantityDataEntity.class, value.getId());
+            Assertions.assertEquals(0, BigDecimal.valueOf(i).compareTo(persisted.getValue()));
+        }
+    }
+
+    @Test
+    public void when_datasetNotPersisted_then_rejected() {
+        QuantityDataEntity data = createData(new DatasetEntity(), 0);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> assembler.insertAll(Collections.singletonList(data)));
+    }
+
+    private QuantityDataEntity createData(DatasetEntity dataset, int value) {
+        Date time = new Date(1000L * value);
+        QuantityDataEntity data = new QuantityDataEntity();
+        data.setDataset(dataset);
+        data.setValue(BigDecimal.valueOf(value));
+        data.setSamplingTimeStart(time);
+        data.setSamplingTimeEnd(time);
+        data.setResultTime(time);
+        data.setStaIdentifier(UUID.randomUUID().toString());
+        return data;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.assembler.value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.sensorweb.server.db.assembler.value.Downsampler.Method;
+import org.n52.web.exception.BadRequestException;
+
+public class DownsamplerTest {
+
+    private static final int ROWS = 10000;
+
+    @Test
+    public void when_belowMaxPoints_then_rowsPassedUnchanged() {
+        List<long[]> series = createSeries(50, -1);
+        Assertions.assertEquals(series, downsample(Method.LTTB, series, 100));
+        Assertions.assertEquals(series, downsample(Method.MINMAX, series, 100));
+    }
+
+    @Test
+    public void when_minMax_then_extremesKept() {
+        List<long[]> series = createSeries(ROWS, 4242);
+        List<long[]> result = downsample(Method.MINMAX, series, 100);
+        Assertions.assertTrue(result.size() <= 100);
+        assertTimeOrdered(result);
+        Assertions.assertTrue(result.contains(series.get(4242)));
+    }
+
+    @Test
+    public void when_lttb_then_firstAndLastKept() {
+        List<long[]> series = createSeries(ROWS, 4242);
+        List<long[]> result = downsample(Method.LTTB, series, 100);
+        Assertions.assertTrue(result.size() <= 100);
+        assertTimeOrdered(result);
+        Assertions.assertSame(series.get(0), result.get(0));
+        Assertions.assertSame(series.get(ROWS - 1), result.get(result.size() - 1));
+        Assertions.assertTrue(result.contains(series.get(4242)));
+    }
+
+    @Test
+    public void when_noMethodGiven_then_lttb() {
+        Assertions.assertEquals(Method.LTTB, Method.fromString(null));
+        Assertions.assertEquals(Method.MINMAX, Method.fromString("minmax"));
+    }
+
+    @Test
+    public void when_unknownMethodGiven_then_badRequest() {
+        Assertions.assertThrows(BadRequestException.class, () -> Method.fromString("average"));
+    }
+
+    private List<long[]> downsample(Method method, List<long[]> series, int maxPoints) {
+        List<long[]> result = new ArrayList<>();
+        long start = series.get(0)[0];
+        long end = series.get(series.size() - 1)[0];
+        Downsampler<long[]> downsampler =
+                Downsampler.create(method, maxPoints, start, end, row -> row[0], row -> row[1], result::add);
+        series.forEach(downsampler);
+        downsampler.finish();
+        return result;
+    }
+
+    private List<long[]> createSeries(int size, int spikeAt) {
+        List<long[]> series = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long value = i == spikeAt ? 1000000L : i % 10;
+            series.add(new long[] { i * 1000L, value });
+        }
+        return series;
+    }
+
+    private void assertTimeOrdered(List<long[]> rows) {
+        for (int i = 1; i < rows.size(); i++) {
+            Assertions.assertTrue(rows.get(i - 1)[0] < rows.get(i)[0]);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void when_cached_then_notLoadedAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 0, now::get);
+        cache.get("a", k -> loads.incrementAndGet());
+        cache.get("a", k -> loads.incrementAndGet());
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void when_expired_then_reloaded() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 100, now::get);
+        cache.put("a", 1);
+        now.set(99);
+        Assertions.assertEquals(1, cache.getIfPresent("a"));
+        now.set(100);
+        Assertions.assertNull(cache.getIfPresent("a"));
+        Assertions.assertEquals(2, cache.get("a", k -> 2));
+    }
+
+    @Test
+    public void when_sizeExceeded_then_oldestEvicted() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(10, 0, now::get);
+        for (int i = 0; i < 11; i++) {
+            now.set(i);
+            cache.put(i, i);
+        }
+        Assertions.assertTrue(cache.size() <= 10);
+        Assertions.assertNull(cache.getIfPresent(0));
+        Assertions.assertEquals(10, cache.getIfPresent(10));
+    }
+
+    @Test
+    public void when_disabled_then_alwaysLoaded() {
+        AtomicInteger loads = new AtomicInteger();
+        BoundedCache<String, Integer> cache = new BoundedCache<>(0, 0, now::get);
+        cache.get("a", k -> loads.incrementAndGet());
+        cache.get("a", k -> loads.incrementAndGet());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.io.request.IoParameters;
+import org.n52.io.request.Parameters;
+import org.n52.sensorweb.server.db.old.dao.DbQuery;
+import org.n52.sensorweb.server.db.old.dao.DefaultDbQueryFactory;
+
+public class EntityCountCacheTest {
+
+    @Test
+    public void when_filterValuesReordered_then_sameKey() {
+        DbQuery query = createQuery(IoParameters.createDefaults().extendWith(Parameters.PROCEDURES, "1,2"));
+        DbQuery reordered = createQuery(IoParameters.createDefaults().extendWith(Parameters.PROCEDURES, "2,1"));
+        Assertions.assertEquals(EntityCountCache.createKey("datasets", query),
+                EntityCountCache.createKey("datasets", reordered));
+    }
+
+    @Test
+    public void when_onlyTimespanDiffers_then_sameKey() {
+        DbQuery query = createQuery(IoParameters.createDefaults());
+        DbQuery timespan = createQuery(IoParameters.createDefaults()
+                .extendWith(Parameters.TIMESPAN, "2020-01-01T00:00:00Z/2020-01-02T00:00:00Z"));
+        Assertions.assertEquals(EntityCountCache.createKey("datasets", query),
+                EntityCountCache.createKey("datasets", timespan));
+    }
+
+    @Test
+    public void when_filterDiffers_then_otherKey() {
+        DbQuery query = createQuery(IoParameters.createDefaults().extendWith(Parameters.PROCEDURES, "1"));
+        DbQuery other = createQuery(IoParameters.createDefaults().extendWith(Parameters.PROCEDURES, "2"));
+        Assertions.assertNotEquals(EntityCountCache.createKey("datasets", query),
+                EntityCountCache.createKey("datasets", other));
+        Assertions.assertNotEquals(EntityCountCache.createKey("datasets", query),
+                EntityCountCache.createKey("procedures", query));
+    }
+
+    @Test
+    public void when_unknownParameterDiffers_then_otherKey() {
+        DbQuery query = createQuery(IoParameters.createDefaults().extendWith("unknownFilter", "1"));
+        DbQuery other = createQuery(IoParameters.createDefaults().extendWith("unknownFilter", "2"));
+        Assertions.assertNotEquals(EntityCountCache.createKey("datasets", query),
+                EntityCountCache.createKey("datasets", other));
+    }
+
+    private DbQuery createQuery(IoParameters parameters) {
+        return new DefaultDbQueryFactory().createFrom(parameters);
+    }
+
+}
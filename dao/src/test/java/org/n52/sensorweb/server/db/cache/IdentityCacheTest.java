@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class IdentityCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final List<String[]> persisted =
+            Collections.synchronizedList(new ArrayList<>(Collections.singletonList(new String[] { "m", "1" })));
+
+    private final IdentityCache<String[]> cache = new IdentityCache<>(it -> it[0], it -> Long.valueOf(it[1]), () -> {
+        loads.incrementAndGet();
+        synchronized (persisted) {
+            return new ArrayList<>(persisted);
+        }
+    });
+
+    @Test
+    public void when_persisted_then_loadedOnce() {
+        Assertions.assertEquals(Long.valueOf(1L), cache.getId(new String[] { "m" }, this::insert));
+        Assertions.assertEquals(Long.valueOf(1L), cache.getId(new String[] { "m" }, this::insert));
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1, persisted.size());
+    }
+
+    @Test
+    public void when_missing_then_insertedOnce() {
+        Assertions.assertEquals(Long.valueOf(2L), cache.getId(new String[] { "s" }, this::insert));
+        Assertions.assertEquals(Long.valueOf(2L), cache.getId(new String[] { "s" }, this::insert));
+        Assertions.assertEquals(2, persisted.size());
+    }
+
+    @Test
+    public void when_invalidated_then_reloaded() {
+        cache.getId(new String[] { "m" }, this::insert);
+        cache.invalidateAll();
+        cache.getId(new String[] { "m" }, this::insert);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void when_resolvingMany_then_onlyMissingInsertedTogether() {
+        List<Integer> batches = new ArrayList<>();
+        Map<String, Long> ids = cache.getIds(Arrays.asList(new String[] { "m" }, new String[] { "s" },
+                new String[] { "s" }, new String[] { "k" }, new String[] { null }), missing -> {
+                    batches.add(missing.size());
+                    List<String[]> inserted = new ArrayList<>();
+                    missing.forEach(it -> inserted.add(insert(it)));
+                    return inserted;
+                });
+        Assertions.assertEquals(Collections.singletonList(2), batches);
+        Assertions.assertEquals(3, ids.size());
+        Assertions.assertEquals(Long.valueOf(1L), ids.get("m"));
+        Assertions.assertEquals(ids.get("s"), cache.getId(new String[] { "s" }, this::insert));
+        Assertions.assertEquals(3, persisted.size());
+    }
+
+    @Test
+    public void when_insertedConcurrently_then_waitingForCommitAndInsertedOnce() throws Exception {
+        // loaded before, as uncommitted inserts are visible to the loader here
+        cache.getId(new String[] { "m" }, this::insert);
+        CountDownLatch inserted = new CountDownLatch(1);
+        CompletableFuture<Long> concurrent = CompletableFuture.supplyAsync(() -> {
+            await(inserted);
+            return cache.getId(new String[] { "s" }, this::insert);
+        });
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            Long id = cache.getId(new String[] { "s" }, this::insert);
+            inserted.countDown();
+            // the concurrent loader must wait for the commit instead of inserting again
+            Thread.sleep(200);
+            Assertions.assertFalse(concurrent.isDone());
+            Assertions.assertEquals(1, cache.size());
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+            Assertions.assertEquals(id, concurrent.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, persisted.size());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void when_rolledBack_then_nothingCached() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.getId(new String[] { "s" }, this::insert);
+            persisted.remove(1);
+            complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(Long.valueOf(2L), cache.getId(new String[] { "s" }, this::insert));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(it -> it.afterCompletion(status));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String[] insert(String[] entity) {
+        String[] inserted = new String[] { entity[0], Integer.toString(persisted.size() + 1) };
+        persisted.add(inserted);
+        return inserted;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Date;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.DatasetEntity;
+
+public class LatestValueCacheTest {
+
+    private final LatestValueCache cache = new LatestValueCache(10, 300);
+
+    @Test
+    public void when_timestampUnchanged_then_cachedIdReturned() {
+        DatasetEntity dataset = createDataset(new Date(1000L), new Date(2000L));
+        cache.putFirst(dataset, 1L);
+        cache.putLast(dataset, 2L);
+        Assertions.assertEquals(Optional.of(1L), cache.getFirst(dataset));
+        Assertions.assertEquals(Optional.of(2L), cache.getLast(dataset));
+    }
+
+    @Test
+    public void when_lastValueAtChanged_then_staleIdIgnored() {
+        DatasetEntity dataset = createDataset(new Date(1000L), new Date(2000L));
+        cache.putFirst(dataset, 1L);
+        cache.putLast(dataset, 2L);
+        dataset.setLastValueAt(new Date(3000L));
+        Assertions.assertEquals(Optional.of(1L), cache.getFirst(dataset));
+        Assertions.assertFalse(cache.getLast(dataset).isPresent());
+    }
+
+    @Test
+    public void when_invalidated_then_nothingReturned() {
+        DatasetEntity dataset = createDataset(new Date(1000L), new Date(2000L));
+        cache.putFirst(dataset, 1L);
+        cache.invalidate(dataset.getId());
+        Assertions.assertFalse(cache.getFirst(dataset).isPresent());
+    }
+
+    @Test
+    public void when_valueCached_then_returnedForSameVariantUntilTimestampChanges() {
+        DatasetEntity dataset = createDataset(new Date(1000L), new Date(2000L));
+        cache.putLast(dataset, 2L);
+        cache.putLastValue(dataset, "expanded", "value");
+        Assertions.assertEquals(Optional.of("value"), cache.getLastValue(dataset, "expanded"));
+        Assertions.assertEquals(Optional.of(2L), cache.getLast(dataset));
+        Assertions.assertFalse(cache.getLastValue(dataset, "condensed").isPresent());
+        dataset.setLastValueAt(new Date(3000L));
+        Assertions.assertFalse(cache.getLastValue(dataset, "expanded").isPresent());
+    }
+
+    private DatasetEntity createDataset(Date firstValueAt, Date lastValueAt) {
+        DatasetEntity dataset = new DatasetEntity();
+        dataset.setId(42L);
+        dataset.setFirstValueAt(firstValueAt);
+        dataset.setLastValueAt(lastValueAt);
+        return dataset;
+    }
+
+}
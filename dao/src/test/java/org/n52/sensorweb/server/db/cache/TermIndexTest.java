@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TermIndexTest {
+
+    private final TermIndex index = createIndex();
+
+    @Test
+    public void when_termContained_then_entitiesFound() {
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), index.find("temp", 10));
+        Assertions.assertEquals(Collections.singleton(3L), index.find("speed", 10));
+    }
+
+    @Test
+    public void when_termShorterThanGram_then_entitiesFound() {
+        Assertions.assertEquals(Collections.singleton(3L), index.find("sp", 10));
+    }
+
+    @Test
+    public void when_termSpansNameAndIdentifier_then_nothingFound() {
+        Assertions.assertTrue(index.find("airtemp", 10).isEmpty());
+        Assertions.assertTrue(index.find("unknown", 10).isEmpty());
+    }
+
+    @Test
+    public void when_tooManyMatches_then_null() {
+        Assertions.assertNull(index.find("e", 2));
+    }
+
+    @Test
+    public void when_termHasWildcards_then_notIndexable() {
+        Assertions.assertTrue(TermIndex.isIndexable("temp"));
+        Assertions.assertFalse(TermIndex.isIndexable("te%mp"));
+        Assertions.assertFalse(TermIndex.isIndexable("te_mp"));
+        Assertions.assertFalse(TermIndex.isIndexable(""));
+    }
+
+    private static TermIndex createIndex() {
+        Map<Long, String> texts = new LinkedHashMap<>();
+        texts.put(1L, TermIndex.normalize("Air Temperature", "air"));
+        texts.put(2L, TermIndex.normalize(null, "water_temp"));
+        texts.put(3L, TermIndex.normalize("Wind speed", "wind_speed"));
+        return new TermIndex(texts);
+    }
+
+}
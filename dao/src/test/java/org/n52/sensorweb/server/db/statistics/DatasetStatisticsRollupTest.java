@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.statistics;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Tuple;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.n52.sensorweb.server.db.assembler.AbstractAssemblerTest;
+import org.n52.sensorweb.server.db.assembler.value.DataInsertAssembler;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs without a test transaction, as the rollup is built within a transaction of its own, which has to see
+ * the data.
+ */
+@DataJpaTest(properties = DatasetStatisticsRollup.ENABLED_KEY + "=true")
+@ExtendWith(SpringExtension.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DatasetStatisticsRollupTest extends AbstractAssemblerTest {
+
+    private static final DateTime DAY = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final Interval DAYS = new Interval(DAY, DAY.plusDays(2));
+
+    @Autowired
+    private DatasetStatisticsRollup rollup;
+
+    @Autowired
+    private DataInsertAssembler dataInsertAssembler;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void createTables() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.createNativeQuery("create table if not exists dataset_statistics (fk_dataset_id bigint"
+                    + " not null, stats_day timestamp not null, value_count bigint not null, value_min numeric,"
+                    + " value_max numeric, value_sum numeric, value_sum_count bigint not null, first_time timestamp"
+                    + " not null, first_value numeric, last_time timestamp not null, last_value numeric,"
+                    + " primary key (fk_dataset_id, stats_day))").executeUpdate();
+            entityManager.createNativeQuery("create table if not exists dataset_statistics_built"
+                    + " (fk_dataset_id bigint not null primary key)").executeUpdate();
+        });
+    }
+
+    @Test
+    public void when_firstRead_then_rollupBuiltOfAllData() {
+        DatasetEntity dataset = quantityDataset("ph1", "of1", "pr1", "format1", "fe1", "format2");
+        dataInsertAssembler.insertAll(Arrays.asList(createData(dataset, DAY.plusHours(12), 1),
+                createData(dataset, DAY.plusHours(13), null), createData(dataset, DAY.plusHours(36), 5)));
+
+        Tuple total = rollup.getTotal(dataset).get();
+
+        Assertions.assertEquals(3L, total.get(0, Number.class).longValue());
+        Assertions.assertEquals(0, BigDecimal.valueOf(6).compareTo(new BigDecimal(total.get(3).toString())));
+        // the divisor of the average
+        Assertions.assertEquals(2L, total.get(4, Number.class).longValue());
+        Assertions.assertEquals(2, rollup.getDays(dataset, DAYS).get().size());
+    }
+
+    @Test
+    public void when_datasetWithoutData_then_builtOnce() {
+        DatasetEntity dataset = quantityDataset("ph2", "of2", "pr2", "format1", "fe2", "format2");
+
+        Assertions.assertEquals(0L, rollup.getTotal(dataset).get().get(0, Number.class).longValue());
+
+        dataInsertAssembler.insertAll(Arrays.asList(createData(dataset, DAY.plusHours(12), 2)));
+        // refreshed by the insert instead of being built again
+        Assertions.assertEquals(1L, rollup.getTotal(dataset).get().get(0, Number.class).longValue());
+    }
+
+    @Test
+    public void when_dataInsertedOrDeleted_then_daysRefreshed() {
+        DatasetEntity dataset = quantityDataset("ph3", "of3", "pr3", "format1", "fe3", "format2");
+        dataInsertAssembler.insertAll(Arrays.asList(createData(dataset, DAY.plusHours(12), 1)));
+        Assertions.assertEquals(1, rollup.getDays(dataset, DAYS).get().size());
+
+        List<QuantityDataEntity> inserted =
+                dataInsertAssembler.insertAll(Arrays.asList(createData(dataset, DAY.plusHours(36), 3)));
+        List<Tuple> days = rollup.getDays(dataset, DAYS).get();
+        Assertions.assertEquals(2, days.size());
+        Assertions.assertEquals(0, BigDecimal.valueOf(3).compareTo(new BigDecimal(days.get(1).get(5).toString())));
+
+        Date time = DAY.plusHours(36).toDate();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.find(QuantityDataEntity.class, inserted.get(0).getId()).setDeleted(true);
+            entityManager.flush();
+            rollup.refresh(entityManager.find(DatasetEntity.class, dataset.getId()), time, time);
+        });
+        Assertions.assertEquals(1, rollup.getDays(dataset, DAYS).get().size());
+    }
+
+    private QuantityDataEntity createData(DatasetEntity dataset, DateTime time, Integer value) {
+        QuantityDataEntity data = new QuantityDataEntity();
+        data.setDataset(dataset);
+        data.setValue(value != null ? BigDecimal.valueOf(value) : null);
+        data.setSamplingTimeStart(time.toDate());
+        data.setSamplingTimeEnd(time.toDate());
+        data.setResultTime(time.toDate());
+        data.setStaIdentifier(UUID.randomUUID().toString());
+        return data;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.srv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.web.exception.BadRequestException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+public class ParallelQueryExecutorTest {
+
+    private static final PlatformTransactionManager NO_TRANSACTIONS = new PlatformTransactionManager() {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    };
+
+    @Test
+    public void when_tasksSucceed_then_resultsInOrder() {
+        ParallelQueryExecutor executor = new ParallelQueryExecutor(NO_TRANSACTIONS, 2);
+        try {
+            List<Supplier<Integer>> tasks = Arrays.asList(() -> 1, () -> 2, () -> 3);
+            Assertions.assertEquals(Arrays.asList(1, 2, 3), executor.invokeAll(tasks));
+            Assertions.assertEquals(Arrays.asList(1, 2, 3), executor.invokeAll(tasks, 10000));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void when_taskFailsUnchecked_then_rethrownAsInSequentialMode() {
+        List<Supplier<Integer>> tasks = Arrays.asList(() -> 1, () -> {
+            throw new BadRequestException("bad request");
+        });
+        for (int threads : new int[] { 0, 2 }) {
+            ParallelQueryExecutor executor = new ParallelQueryExecutor(NO_TRANSACTIONS, threads);
+            try {
+                Assertions.assertThrows(BadRequestException.class, () -> executor.invokeAll(tasks));
+                Assertions.assertThrows(BadRequestException.class, () -> executor.invokeAll(tasks, 10000));
+            } finally {
+                executor.destroy();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.old.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+import org.n52.series.db.beans.DataEntity;
+import org.n52.web.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opaque continuation token for keyset pagination of data. A token refers to the last data entity of a page
+ * by its dataset, sampling time end and id, so that the next page starts right after it regardless of how
+ * deep it is within the data. A token only continues the data of its own dataset.
+ */
+public final class DataPageToken {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataPageToken.class);
+
+    private static final String SEPARATOR = ":";
+
+    private final long datasetId;
+
+    private final long samplingTimeEnd;
+
+    private final long id;
+
+    public DataPageToken(long datasetId, long samplingTimeEnd, long id) {
+        this.datasetId = datasetId;
+        this.samplingTimeEnd = samplingTimeEnd;
+        this.id = id;
+    }
+
+    /**
+     * @param data
+     *            the last data entity of a page
+     * @return the token referring to the given data entity
+     */
+    public static DataPageToken of(DataEntity<?> data) {
+        return new DataPageToken(data.getDatasetId(), data.getSamplingTimeEnd().getTime(), data.getId());
+    }
+
+    /**
+     * @param token
+     *            an encoded token
+     * @return the decoded token
+     * @throws BadRequestException
+     *             if the given token is invalid
+     */
+    public static DataPageToken decode(String token) {
+        try {
+            String[] keys = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split(SEPARATOR);
+            if (keys.length == 3) {
+                return new DataPageToken(Long.parseLong(keys[0]), Long.parseLong(keys[1]), Long.parseLong(keys[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // invalid base64 or number format
+            LOGGER.debug("Could not decode page token '{}'", token, e);
+        }
+        throw new BadRequestException("Invalid page token: " + token);
+    }
+
+    public String encode() {
+        String keys = datasetId + SEPARATOR + samplingTimeEnd + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(keys.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getDatasetId() {
+        return datasetId;
+    }
+
+    public Date getSamplingTimeEnd() {
+        return new Date(samplingTimeEnd);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(datasetId, samplingTimeEnd, id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DataPageToken)) {
+            return false;
+        }
+        DataPageToken other = (DataPageToken) obj;
+        return datasetId == other.datasetId && samplingTimeEnd == other.samplingTimeEnd && id == other.id;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+}
@@ -39,6 +39,7 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
@@ -84,6 +85,29 @@ public class DbQuery {
 
     public static final String OFFERING_ALIAS = "offering_";
 
+    /**
+     * Maximum number of data values to return per dataset. Data gets downsampled when exceeded. Downsampling
+     * applies to quantity data of stationary datasets only and is not combined with paging, data of other
+     * datasets is returned unreduced.
+     */
+    public static final String MAX_POINTS = "maxPoints";
+
+    /**
+     * Downsampling method to apply when {@link #MAX_POINTS} is exceeded ({@code lttb} or {@code minmax}).
+     */
+    public static final String DOWNSAMPLING = "downsampling";
+
+    /**
+     * Period of time buckets to aggregate data into, e.g. {@code daily} or an ISO 8601 period like
+     * {@code PT15M}.
+     */
+    public static final String AGGREGATION_PERIOD = "aggregationPeriod";
+
+    /**
+     * Continuation token of the next data page, see {@link DataPageToken}.
+     */
+    public static final String PAGE_TOKEN = "pageToken";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DbQuery.class);
 
     private static final String PROPERTY_ID = "id";
@@ -250,6 +274,54 @@ public class DbQuery {
         return isExpanded;
     }
 
+    public int getMaxPoints() {
+        return parameters.getAsInteger(MAX_POINTS, 0);
+    }
+
+    public boolean isDownsampling() {
+        return getMaxPoints() > 0;
+    }
+
+    public String getDownsamplingMethod() {
+        return parameters.getAsString(DOWNSAMPLING, null);
+    }
+
+    public String getAggregationPeriod() {
+        return parameters.getAsString(AGGREGATION_PERIOD, null);
+    }
+
+    /**
+     * Data gets paged by sampling time end and id, when a {@link #PAGE_TOKEN} is requested. An empty token
+     * requests the first page. The page size is taken from {@link Parameters#LIMIT}.
+     *
+     * @return if data is requested page by page
+     */
+    public boolean isDataPaging() {
+        return parameters.containsParameter(PAGE_TOKEN);
+    }
+
+    public int getDataPageSize() {
+        int limit = parameters.containsParameter(Parameters.LIMIT) ? parameters.getLimit() : DEFAULT_LIMIT;
+        return limit > 0 ? limit : DEFAULT_LIMIT;
+    }
+
+    /**
+     * @param datasetId
+     *            the id of the dataset to page
+     * @return the token of the requested data page or {@literal null} for the first page. A token of another
+     *         dataset does not continue the given dataset, which starts with its first page then.
+     * @throws org.n52.web.exception.BadRequestException
+     *             if the requested token is invalid
+     */
+    public DataPageToken getPageToken(long datasetId) {
+        String token = parameters.getAsString(PAGE_TOKEN, null);
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        DataPageToken pageToken = DataPageToken.decode(token);
+        return pageToken.getDatasetId() == datasetId ? pageToken : null;
+    }
+
     public boolean isMatchDomainIds() {
         return parameters.getAsBoolean(Parameters.MATCH_DOMAIN_IDS, Parameters.DEFAULT_MATCH_DOMAIN_IDS);
     }
@@ -354,6 +426,32 @@ public class DbQuery {
         return criteria;
     }
 
+    /**
+     * Restricts data to the requested page. Instead of skipping an offset, data is ordered by sampling time
+     * end and id and starts right after the entity referenced by the page token, so that deep pages cost the
+     * same as the first one.
+     *
+     * @param datasetId
+     *            the id of the paged dataset
+     * @param criteria
+     *            the data criteria, already ordered by sampling time end
+     * @return the criteria
+     */
+    public Criteria addDataPageTo(long datasetId, Criteria criteria) {
+        if (isDataPaging()) {
+            DataPageToken token = getPageToken(datasetId);
+            if (token != null) {
+                Date samplingTimeEnd = token.getSamplingTimeEnd();
+                criteria.add(Restrictions.or(Restrictions.gt(DataEntity.PROPERTY_SAMPLING_TIME_END, samplingTimeEnd),
+                        Restrictions.and(Restrictions.eq(DataEntity.PROPERTY_SAMPLING_TIME_END, samplingTimeEnd),
+                                Restrictions.gt(DataEntity.PROPERTY_ID, token.getId()))));
+            }
+            criteria.addOrder(Order.asc(DataEntity.PROPERTY_ID));
+            criteria.setMaxResults(getDataPageSize());
+        }
+        return criteria;
+    }
+
     public Criteria addDetachedFilters(String datasetName, Criteria criteria) {
         Set<String> categories = parameters.getCategories();
         Set<String> procedures = parameters.getProcedures();
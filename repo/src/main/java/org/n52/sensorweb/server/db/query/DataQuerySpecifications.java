@@ -28,26 +28,37 @@
 package org.n52.sensorweb.server.db.query;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
 
+import org.hibernate.jpa.QueryHints;
 import org.hibernate.query.criteria.internal.CriteriaBuilderImpl;
-import org.hibernate.query.criteria.internal.OrderImpl;
 import org.hibernate.query.criteria.internal.expression.LiteralExpression;
 import org.locationtech.jts.geom.Geometry;
 import org.n52.io.request.IoParameters;
+import org.n52.sensorweb.server.db.old.dao.DataPageToken;
 import org.n52.sensorweb.server.db.old.dao.DbQuery;
+import org.n52.sensorweb.server.db.old.dao.QueryUtils;
 import org.n52.series.db.beans.CountDataEntity;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
@@ -58,6 +69,52 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public final class DataQuerySpecifications<E extends DatasetEntity> extends QuerySpecifications {
 
+    private static final int MATCH_VALUES_FETCH_SIZE = 16;
+
+    /**
+     * How the closest data outside the requested timespan gets queried. Among data of equal sampling time the
+     * data of the latest result time is the closest.
+     */
+    public enum OuterValueQuery {
+
+        /**
+         * Queries a single closest value like {@link #LIMIT}, but the values before and after the timespan
+         * together like {@link #SUBQUERY}, so that both take one round-trip.
+         */
+        AUTO,
+
+        /**
+         * Orders data by sampling time and limits the result to one entity, which databases answer with a
+         * single index probe. The values before and after the timespan are queried separately.
+         */
+        LIMIT,
+
+        /**
+         * Matches the closest sampling time via nested {@code max}/{@code min} subqueries, for databases whose
+         * planners do not push the limit down. The values before and after the timespan are queried together.
+         */
+        SUBQUERY;
+
+        /**
+         * @param query
+         *            the name of the query, case-insensitive
+         * @return the matching query, {@link #AUTO} if none is given
+         * @throws IllegalArgumentException
+         *             if no query has the given name
+         */
+        public static OuterValueQuery fromString(String query) {
+            if (query == null || query.trim().isEmpty()) {
+                return AUTO;
+            }
+            try {
+                return valueOf(query.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown outer value query '" + query + "', expected one of "
+                        + Arrays.toString(values()).toLowerCase(Locale.ROOT), e);
+            }
+        }
+    }
+
     private DataQuerySpecifications(final DbQuery query) {
         super(query, null);
     }
@@ -73,6 +130,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
      * <li>{@link #matchTimespan()}</li>
      * <li>{@link #matchIsNotDeleted()}</li>
      * <li>{@link #matchesSpatially()}</li>
+     * <li>{@link #matchPageToken()}</li>
      * </ul>
      *
      * @return a boolean expression matching all filter criteria
@@ -82,7 +140,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
     public Specification<DataEntity> matchFilters() {
         //.and(matchParentsIsNull())
         return matchDatasets().and(matchTimespan()).and(matchIsNotDeleted())
-                .and(matchesSpatially());
+                .and(matchesSpatially()).and(matchPageToken());
     }
 
     /**
@@ -93,6 +151,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
      * <li>{@link #matchIsNotDeleted()}</li>
      * <li>{@link #matchParentsIsNull()}</li>
      * <li>{@link #matchesSpatially()}</li>
+     * <li>{@link #matchPageToken()}</li>
      * </ul>
      *
      * @return a boolean expression matching all filter criteria
@@ -100,7 +159,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
     @SuppressFBWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
     public Specification<DataEntity> matchFiltersParentsIsNull() {
         return matchDatasets().and(matchTimespan()).and(matchIsNotDeleted()).and(matchParentsIsNull())
-                .and(matchesSpatially());
+                .and(matchesSpatially()).and(matchPageToken());
     }
 
     /**
@@ -111,6 +170,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
      * <li>{@link #matchIsNotDeleted()}</li>
      * <li>{@link #matchParentsIsNotNull()}</li>
      * <li>{@link #matchesSpatially()}</li>
+     * <li>{@link #matchPageToken()}</li>
      * </ul>
      *
      * @return a boolean expression matching all filter criteria
@@ -118,7 +178,7 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
     @SuppressFBWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
     public Specification<DataEntity> matchFiltersParentsNotNull() {
         return matchDatasets().and(matchTimespan()).and(matchIsNotDeleted()).and(matchParentsIsNotNull())
-                .and(matchesSpatially());
+                .and(matchesSpatially()).and(matchPageToken());
     }
 
     /**
@@ -137,6 +197,36 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
 
     }
 
+    /**
+     * Matches data after the requested page token, so that a page starts right after the last data entity of
+     * the previous one. For example:
+     *
+     * <pre>
+     *   where samplingTimeEnd &gt; &lt;token_time&gt;
+     *      or (samplingTimeEnd = &lt;token_time&gt; and id &gt; &lt;token_id&gt;)
+     * </pre>
+     *
+     * Data has to be ordered by sampling time end and id. A token only applies to a query for its own
+     * dataset, see {@link DbQuery#getPageToken(long)}.
+     *
+     * @return a boolean expression or {@literal null} when no page token is requested
+     */
+    public Specification<DataEntity> matchPageToken() {
+        Set<String> datasets = dbQuery.getParameters().getDatasets();
+        DataPageToken token = dbQuery.isDataPaging() && datasets.size() == 1
+                ? dbQuery.getPageToken(QueryUtils.parseToId(datasets.iterator().next()))
+                : null;
+        if (token == null) {
+            return null;
+        }
+        return (root, query, builder) -> {
+            Path<Date> samplingTimeEnd = root.get(DataEntity.PROPERTY_SAMPLING_TIME_END);
+            return builder.or(builder.greaterThan(samplingTimeEnd, token.getSamplingTimeEnd()),
+                    builder.and(builder.equal(samplingTimeEnd, token.getSamplingTimeEnd()),
+                            builder.greaterThan(root.get(DataEntity.PROPERTY_ID), token.getId())));
+        };
+    }
+
     public Specification<DataEntity> matchIsNotDeleted() {
         return (root, query, builder) -> builder.equal(root.get(DataEntity.PROPERTY_DELETED), 0);
     }
@@ -220,8 +310,8 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
         Root<DataEntity> root = query.from(DataEntity.class);
         query.select(root).orderBy(builder.desc(root.get(DataEntity.PROPERTY_SAMPLING_TIME_END))).where(
                 matchDatasets(dataset.getId()).toPredicate(root, query, builder),
-                matcheEquals(getTimespanStart(), DataEntity.PROPERTY_SAMPLING_TIME_START).toPredicate(root, query,
-                        builder));
+                matcheEquals(dataset.getFirstValueAt(), DataEntity.PROPERTY_SAMPLING_TIME_START).toPredicate(root,
+                        query, builder));
         return entityManager.createQuery(query).setMaxResults(1).getResultList().stream().findFirst();
     }
 
@@ -231,128 +321,315 @@ public final class DataQuerySpecifications<E extends DatasetEntity> extends Quer
         Root<DataEntity> root = query.from(DataEntity.class);
         query.select(root).orderBy(builder.desc(root.get(DataEntity.PROPERTY_SAMPLING_TIME_END))).where(
                 matchDatasets(dataset.getId()).toPredicate(root, query, builder),
-                matcheEquals(getTimespanEnd(), DataEntity.PROPERTY_SAMPLING_TIME_END).toPredicate(root, query,
+                matcheEquals(dataset.getLastValueAt(), DataEntity.PROPERTY_SAMPLING_TIME_END).toPredicate(root, query,
                         builder));
         return entityManager.createQuery(query).setMaxResults(1).getResultList().stream().findFirst();
     }
 
     public Optional<DataEntity> matchClosestBeforeStart(DatasetEntity dataset, EntityManager entityManager) {
+        return matchClosestBeforeStart(dataset, entityManager, OuterValueQuery.LIMIT);
+    }
+
+    public Optional<DataEntity> matchClosestBeforeStart(DatasetEntity dataset, EntityManager entityManager,
+            OuterValueQuery outerValueQuery) {
+        return outerValueQuery == OuterValueQuery.SUBQUERY
+                ? matchClosestViaSubquery(dataset, entityManager, true)
+                : matchClosestViaLimit(dataset, entityManager, true);
+    }
+
+    public Optional<DataEntity> matchClosestAfterEnd(DatasetEntity dataset, EntityManager entityManager) {
+        return matchClosestAfterEnd(dataset, entityManager, OuterValueQuery.LIMIT);
+    }
+
+    public Optional<DataEntity> matchClosestAfterEnd(DatasetEntity dataset, EntityManager entityManager,
+            OuterValueQuery outerValueQuery) {
+        return outerValueQuery == OuterValueQuery.SUBQUERY
+                ? matchClosestViaSubquery(dataset, entityManager, false)
+                : matchClosestViaLimit(dataset, entityManager, false);
+    }
+
+    /**
+     * Matches the closest data before the timespan start and the closest data after the timespan end, see
+     * {@link #matchClosestBeforeStart(DatasetEntity, EntityManager, OuterValueQuery)} and
+     * {@link #matchClosestAfterEnd(DatasetEntity, EntityManager, OuterValueQuery)}. Unless via
+     * {@link OuterValueQuery#LIMIT} both are matched with one query.
+     *
+     * @param dataset
+     *            the dataset
+     * @param entityManager
+     *            the entity manager
+     * @param outerValueQuery
+     *            how to query the closest data
+     * @return the closest data before and after the timespan, ordered by sampling time start and result time
+     */
+    public List<DataEntity> matchClosestOuterValues(DatasetEntity dataset, EntityManager entityManager,
+            OuterValueQuery outerValueQuery) {
+        if (outerValueQuery == OuterValueQuery.LIMIT) {
+            List<DataEntity> values = new ArrayList<>(2);
+            matchClosestViaLimit(dataset, entityManager, true).ifPresent(values::add);
+            matchClosestViaLimit(dataset, entityManager, false).ifPresent(values::add);
+            return values;
+        }
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<DataEntity> query = builder.createQuery(DataEntity.class);
         Root<DataEntity> root = query.from(DataEntity.class);
-        Subquery sq = query.subquery(Date.class);
-        Root<DataEntity> max = sq.from(DataEntity.class);
-        sq.select(builder.max(max.get(DataEntity.PROPERTY_SAMPLING_TIME_START)))
+        Path<Object> id = root.get(DataEntity.PROPERTY_ID);
+        query.select(root)
+                .where(builder.or(builder.in(id).value(createClosestIdSubquery(dataset, query, builder, true)),
+                        builder.in(id).value(createClosestIdSubquery(dataset, query, builder, false))))
+                .orderBy(builder.asc(root.get(DataEntity.PROPERTY_SAMPLING_TIME_START)),
+                        builder.asc(root.get(DataEntity.PROPERTY_RESULT_TIME)));
+        List<DataEntity> values = new ArrayList<>(2);
+        for (DataEntity value : entityManager.createQuery(query).getResultList()) {
+            // data of equal sampling time are ordered by result time, so the latest replaces the others
+            boolean sameSamplingTime = !values.isEmpty()
+                    && values.get(values.size() - 1).getSamplingTimeStart().equals(value.getSamplingTimeStart());
+            if (sameSamplingTime) {
+                values.set(values.size() - 1, value);
+            } else {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private Optional<DataEntity> matchClosestViaLimit(DatasetEntity dataset, EntityManager entityManager,
+            boolean before) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<DataEntity> query = builder.createQuery(DataEntity.class);
+        Root<DataEntity> root = query.from(DataEntity.class);
+        Path<Date> start = root.get(DataEntity.PROPERTY_SAMPLING_TIME_START);
+        query.select(root)
                 .where(matchDatasets(dataset.getId()).and(matchIsNotDeleted()).and(matchParentsIsNull())
-                        .toPredicate(max, query, builder),
-                        builder.lessThan(max.get(DataEntity.PROPERTY_SAMPLING_TIME_START), getTimespanStart()));
-        Subquery sqObs = query.subquery(Long.class);
-        Root<DataEntity> obsId = sqObs.from(DataEntity.class);
-        sqObs.select(obsId.get(DataEntity.PROPERTY_ID))
-                .where(builder.and(builder.equal(obsId.get(DataEntity.PROPERTY_SAMPLING_TIME_START), sq.getSelection()),
-                        matchDatasets(dataset.getId()).and(matchIsNotDeleted()).and(matchParentsIsNull())
-                                .toPredicate(obsId, query, builder)));
-        query.select(root);
-        query.where(builder.equal(root.get(DataEntity.PROPERTY_ID), sqObs.getSelection()));
-        return entityManager.createQuery(query).getResultList().stream().findFirst();
+                        .toPredicate(root, query, builder),
+                        before ? builder.lessThan(start, getTimespanStart())
+                                : builder.greaterThan(start, getTimespanEnd()))
+                .orderBy(before ? builder.desc(start) : builder.asc(start),
+                        builder.desc(root.get(DataEntity.PROPERTY_RESULT_TIME)));
+        return entityManager.createQuery(query).setMaxResults(1).getResultList().stream().findFirst();
     }
 
-    public Optional<DataEntity> matchClosestAfterEnd(DatasetEntity dataset, EntityManager entityManager) {
+    private Optional<DataEntity> matchClosestViaSubquery(DatasetEntity dataset, EntityManager entityManager,
+            boolean before) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<DataEntity> query = builder.createQuery(DataEntity.class);
         Root<DataEntity> root = query.from(DataEntity.class);
+        query.select(root);
+        query.where(builder.in(root.get(DataEntity.PROPERTY_ID))
+                .value(createClosestIdSubquery(dataset, query, builder, before)))
+                .orderBy(builder.desc(root.get(DataEntity.PROPERTY_RESULT_TIME)));
+        return entityManager.createQuery(query).setMaxResults(1).getResultList().stream().findFirst();
+    }
+
+    private Subquery<Long> createClosestIdSubquery(DatasetEntity dataset, CriteriaQuery<?> query,
+            CriteriaBuilder builder, boolean before) {
         Subquery sq = query.subquery(Date.class);
-        Root<DataEntity> min = sq.from(DataEntity.class);
-        sq.select(builder.min(min.get(DataEntity.PROPERTY_SAMPLING_TIME_START)))
+        Root<DataEntity> closest = sq.from(DataEntity.class);
+        Path<Date> start = closest.get(DataEntity.PROPERTY_SAMPLING_TIME_START);
+        sq.select(before ? builder.greatest(start) : builder.least(start))
                 .where(matchDatasets(dataset.getId()).and(matchIsNotDeleted()).and(matchParentsIsNull())
-                        .toPredicate(min, query, builder),
-                        builder.greaterThan(min.get(DataEntity.PROPERTY_SAMPLING_TIME_START), getTimespanEnd()));
-        Subquery sqObs = query.subquery(Long.class);
+                        .toPredicate(closest, query, builder),
+                        before ? builder.lessThan(start, getTimespanStart())
+                                : builder.greaterThan(start, getTimespanEnd()));
+        Subquery<Long> sqObs = query.subquery(Long.class);
         Root<DataEntity> obsId = sqObs.from(DataEntity.class);
         sqObs.select(obsId.get(DataEntity.PROPERTY_ID))
                 .where(builder.and(builder.equal(obsId.get(DataEntity.PROPERTY_SAMPLING_TIME_START), sq.getSelection()),
                         matchDatasets(dataset.getId()).and(matchIsNotDeleted()).and(matchParentsIsNull())
                                 .toPredicate(obsId, query, builder)));
-        query.select(root);
-        query.where(builder.equal(root.get(DataEntity.PROPERTY_ID), sqObs.getSelection()));
-        return entityManager.createQuery(query).getResultList().stream().findFirst();
+        return sqObs;
     }
 
+    /**
+     * Counts all values of the given dataset. Like {@link #statistics(DatasetEntity, EntityManager)}, data deleted
+     * or being a child of other data is not considered.
+     *
+     * @param dataset
+     *            the dataset
+     * @param entityManager
+     *            the entity manager
+     * @return the number of values
+     */
     public Long count(DatasetEntity dataset, EntityManager entityManager) {
-        // Criteria c =
-        // getDefaultCriteria().add(Restrictions.eq(DataEntity.PROPERTY_DATASET_ID, dataset.getId()))
-        // .setProjection(Projections.rowCount());
-        // return (Long) c.uniqueResult();
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<Long> query = builder.createQuery(Long.class);
         Root<DataEntity> root = query.from(DataEntity.class);
         query.select(builder.count(root));
-        query.where(matchDatasets(dataset.getId()).toPredicate(root, query, builder));
+        query.where(matchStatistics(dataset).toPredicate(root, query, builder));
         return entityManager.createQuery(query).getSingleResult();
     }
 
-    public DataEntity min(DatasetEntity dataset, EntityManager entityManager) {
+    /**
+     * Aggregates the values of the given dataset within the requested timespan into groups of equal calendar
+     * fields, e.g. grouped by {@code year}, {@code month} and {@code day} for daily groups. All is done within
+     * one {@code GROUP BY} query. Each tuple contains the group's earliest and latest sampling time end, the
+     * number of data, the minimum, maximum and sum of their values and the number of values not being
+     * {@literal null}, which is the divisor of the average.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param calendarFields
+     *            the functions extracting the calendar fields to group by, e.g. {@code year}, {@code month}
+     * @param entityManager
+     *            the entity manager
+     * @return the aggregated groups ordered by time, or an empty list if the dataset is not numerical
+     */
+    public List<Tuple> aggregateByCalendarFields(DatasetEntity dataset, List<String> calendarFields,
+            EntityManager entityManager) {
         Class<?> clazz = getClass(dataset);
-        if (clazz != null) {
-            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-            CriteriaQuery<DataEntity> query = (CriteriaQuery<DataEntity>) builder.createQuery(clazz);
+        if (clazz == null) {
+            return Collections.emptyList();
+        }
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<DataEntity> root = (Root<DataEntity>) query.from(clazz);
+        Path<Date> time = root.get(DataEntity.PROPERTY_SAMPLING_TIME_END);
+        Path<Number> value = root.get(DataEntity.PROPERTY_VALUE);
+        Expression<Date> first = builder.least(time);
+        query.multiselect(first, builder.greatest(time), builder.count(root), builder.min(value),
+                builder.max(value), builder.sum(value), builder.count(value))
+                .where(matchBuckets(dataset).toPredicate(root, query, builder))
+                .groupBy(extractCalendarFields(calendarFields, time, builder))
+                .orderBy(builder.asc(first));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    /**
+     * Matches the first and the last value of each group of equal calendar fields, see
+     * {@link #aggregateByCalendarFields(DatasetEntity, List, EntityManager)}. Each tuple contains the sampling
+     * time end and the value.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param calendarFields
+     *            the functions extracting the calendar fields to group by, e.g. {@code year}, {@code month}
+     * @param entityManager
+     *            the entity manager
+     * @return the first and last values of each group ordered by time, or an empty list if the dataset is not
+     *         numerical
+     */
+    public List<Tuple> matchFirstAndLastByCalendarFields(DatasetEntity dataset, List<String> calendarFields,
+            EntityManager entityManager) {
+        Class<?> clazz = getClass(dataset);
+        if (clazz == null) {
+            return Collections.emptyList();
+        }
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<DataEntity> root = (Root<DataEntity>) query.from(clazz);
+
+        Subquery<Date> firsts = query.subquery(Date.class);
+        Root<DataEntity> firstRoot = (Root<DataEntity>) firsts.from(clazz);
+        Path<Date> firstTime = firstRoot.get(DataEntity.PROPERTY_SAMPLING_TIME_END);
+        firsts.select(builder.least(firstTime))
+                .where(matchBuckets(dataset).toPredicate(firstRoot, query, builder))
+                .groupBy(extractCalendarFields(calendarFields, firstTime, builder));
+
+        Subquery<Date> lasts = query.subquery(Date.class);
+        Root<DataEntity> lastRoot = (Root<DataEntity>) lasts.from(clazz);
+        Path<Date> lastTime = lastRoot.get(DataEntity.PROPERTY_SAMPLING_TIME_END);
+        lasts.select(builder.greatest(lastTime))
+                .where(matchBuckets(dataset).toPredicate(lastRoot, query, builder))
+                .groupBy(extractCalendarFields(calendarFields, lastTime, builder));
+
+        Path<Date> time = root.get(DataEntity.PROPERTY_SAMPLING_TIME_END);
+        query.multiselect(time, root.get(DataEntity.PROPERTY_VALUE))
+                .where(matchBuckets(dataset).toPredicate(root, query, builder),
+                        builder.or(time.in(firsts), time.in(lasts)))
+                .orderBy(builder.asc(time));
+        return entityManager.createQuery(query).getResultList();
+    }
 
-            Subquery sq = createSubQuery(query, dataset);
-            Root<DataEntity> min = sq.from(clazz);
-            sq.select(builder.min(min.get(DataEntity.PROPERTY_VALUE))).distinct(true)
-                    .where(matchDatasets(dataset.getId()).toPredicate(min, query, builder));
+    private Specification<DataEntity> matchBuckets(DatasetEntity dataset) {
+        return matchDatasets(dataset.getId()).and(matchTimespan()).and(matchIsNotDeleted())
+                .and(matchParentsIsNull());
+    }
 
-            Root<DataEntity> root = (Root<DataEntity>) query.from(clazz);
-            query.select(root).orderBy(new OrderImpl(root.get(DataEntity.PROPERTY_SAMPLING_TIME_END), false));
-            query.where(builder.and(builder.equal(root.get(DataEntity.PROPERTY_VALUE), sq.getSelection()),
-                    matchDatasets(dataset.getId()).toPredicate(root, query, builder)));
-            return entityManager.createQuery(query).setMaxResults(1).getSingleResult();
+    private List<Expression<?>> extractCalendarFields(List<String> calendarFields, Path<Date> time,
+            CriteriaBuilder builder) {
+        List<Expression<?>> fields = new ArrayList<>(calendarFields.size());
+        for (String calendarField : calendarFields) {
+            fields.add(builder.function(calendarField, Integer.class, time));
         }
-        return null;
+        return fields;
     }
 
-    public DataEntity max(DatasetEntity dataset, EntityManager entityManager) {
+    /**
+     * Computes count, minimum, maximum and average of all values of the given dataset within one aggregate
+     * query. Like the aggregation buckets, data deleted or being a child of other data is not considered.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param entityManager
+     *            the entity manager
+     * @return a tuple containing count, minimum, maximum and average, or {@literal null} if the dataset is not
+     *         numerical
+     * @see #matchLatestByValues(DatasetEntity, List, EntityManager)
+     */
+    public Tuple statistics(DatasetEntity dataset, EntityManager entityManager) {
         Class<?> clazz = getClass(dataset);
         if (clazz != null) {
             CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-            CriteriaQuery<DataEntity> query = (CriteriaQuery<DataEntity>) builder.createQuery(clazz);
-
-            Subquery sq = createSubQuery(query, dataset);
-            Root<DataEntity> max = sq.from(clazz);
-            sq.select(builder.max(max.get(DataEntity.PROPERTY_VALUE))).distinct(true)
-                    .where(matchDatasets(dataset.getId()).toPredicate(max, query, builder));
-
+            CriteriaQuery<Tuple> query = builder.createTupleQuery();
             Root<DataEntity> root = (Root<DataEntity>) query.from(clazz);
-            query.select(root).orderBy(new OrderImpl(root.get(DataEntity.PROPERTY_SAMPLING_TIME_END), false));
-            query.where(builder.and(builder.equal(root.get(DataEntity.PROPERTY_VALUE), sq.getSelection()),
-                    matchDatasets(dataset.getId()).toPredicate(root, query, builder)));
-            return entityManager.createQuery(query).setMaxResults(1).getSingleResult();
+            Path<Number> value = root.get(DataEntity.PROPERTY_VALUE);
+            query.multiselect(builder.count(root), builder.min(value), builder.max(value), builder.avg(value))
+                    .where(matchStatistics(dataset).toPredicate(root, query, builder));
+            return entityManager.createQuery(query).getSingleResult();
         }
         return null;
     }
 
-    public BigDecimal average(DatasetEntity dataset, EntityManager entityManager) {
+    /**
+     * Matches the latest data entity for each of the given values, e.g. to resolve the minimum and maximum
+     * computed by {@link #statistics(DatasetEntity, EntityManager)}. All values are matched with one query
+     * which is read only until each value has been found.
+     *
+     * @param dataset
+     *            the numerical dataset
+     * @param values
+     *            the values to match
+     * @param entityManager
+     *            the entity manager
+     * @return the latest data entity for each value in the order of the given values, containing
+     *         {@literal null} for values not found
+     */
+    public List<DataEntity> matchLatestByValues(DatasetEntity dataset, List<? extends Number> values,
+            EntityManager entityManager) {
+        DataEntity[] matches = new DataEntity[values.size()];
         Class<?> clazz = getClass(dataset);
-        if (clazz != null) {
+        if (clazz != null && !values.isEmpty()) {
             CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-            CriteriaQuery<Double> query = builder.createQuery(Double.class);
+            CriteriaQuery<DataEntity> query = (CriteriaQuery<DataEntity>) builder.createQuery(clazz);
             Root<DataEntity> root = (Root<DataEntity>) query.from(clazz);
-            query.select(builder.avg(root.get(DataEntity.PROPERTY_VALUE)));
-            query.where(matchDatasets(dataset.getId()).toPredicate(root, query, builder));
-            return BigDecimal.valueOf(entityManager.createQuery(query).getSingleResult());
+            query.select(root).orderBy(builder.desc(root.get(DataEntity.PROPERTY_SAMPLING_TIME_END)));
+            query.where(builder.and(root.get(DataEntity.PROPERTY_VALUE).in(values),
+                    matchStatistics(dataset).toPredicate(root, query, builder)));
+            try (Stream<DataEntity> stream = entityManager.createQuery(query)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, MATCH_VALUES_FETCH_SIZE)
+                    .getResultStream()) {
+                int missing = matches.length;
+                for (Iterator<DataEntity> it = stream.iterator(); missing > 0 && it.hasNext();) {
+                    DataEntity entity = it.next();
+                    for (int i = 0; i < matches.length; i++) {
+                        if (matches[i] == null && isEqualValue(values.get(i), entity.getValue())) {
+                            matches[i] = entity;
+                            missing--;
+                        }
+                    }
+                }
+            }
         }
-        return null;
+        return Arrays.asList(matches);
     }
 
-    private Subquery<?> createSubQuery(CriteriaQuery<?> query, DatasetEntity dataset) {
-        switch (dataset.getValueType()) {
-            case count:
-                return query.subquery(Integer.class);
-            case quantity:
-                return query.subquery(BigDecimal.class);
-            default:
-                return null;
-        }
+    private Specification<DataEntity> matchStatistics(DatasetEntity dataset) {
+        return matchDatasets(dataset.getId()).and(matchIsNotDeleted()).and(matchParentsIsNull());
+    }
+
+    private boolean isEqualValue(Number expected, Object actual) {
+        return expected != null && actual != null
+                && new BigDecimal(expected.toString()).compareTo(new BigDecimal(actual.toString())) == 0;
     }
 
     private Class<?> getClass(DatasetEntity dataset) {
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ */
+package org.n52.sensorweb.server.db.old.dao;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.web.exception.BadRequestException;
+
+public class DataPageTokenTest {
+
+    @Test
+    public void when_encoded_then_decodedEqually() {
+        DataPageToken token = new DataPageToken(42L, 1577836800000L, 4711L);
+        Assertions.assertEquals(token, DataPageToken.decode(token.encode()));
+    }
+
+    @Test
+    public void when_invalidToken_then_badRequest() {
+        Assertions.assertThrows(BadRequestException.class, () -> DataPageToken.decode("not a token"));
+        Assertions.assertThrows(BadRequestException.class, () -> DataPageToken.decode("MTIzNA"));
+        Assertions.assertThrows(BadRequestException.class, () -> DataPageToken.decode("MToyOjM6NA"));
+    }
+
+}
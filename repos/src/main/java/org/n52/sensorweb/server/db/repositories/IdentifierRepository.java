@@ -27,6 +27,8 @@
  */
 package org.n52.sensorweb.server.db.repositories;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface IdentifierRepository<T> {
@@ -35,6 +37,8 @@ public interface IdentifierRepository<T> {
 
     Optional<T> findByIdentifier(String identifier);
 
+    List<T> findByIdentifierIn(Collection<String> identifiers);
+
     void deleteByIdentifier(String identifier);
 
     T getOneByIdentifier(String identifier);
@@ -27,6 +27,10 @@
  */
 package org.n52.sensorweb.server.db.repositories;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.n52.series.db.beans.DescribableEntity;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.repository.NoRepositoryBean;
@@ -37,6 +41,11 @@ import com.cosium.spring.data.jpa.entity.graph.repository.EntityGraphQueryByExam
 public interface ParameterDataRepository<T extends DescribableEntity>
         extends AbstractRepository<T>, EntityGraphQueryByExampleExecutor<T> {
 
+    /**
+     * Maximum number of identifiers bound to a single <code>IN</code> clause, some databases reject more.
+     */
+    int MAX_IN_IDENTIFIERS = 1000;
+
     default boolean exists(Specification<T> spcification) {
         return findOne(spcification).isPresent();
     }
@@ -46,4 +55,35 @@ public interface ParameterDataRepository<T extends DescribableEntity>
                 : findByIdentifier(entity.getIdentifier()).orElse(null);
     }
 
+    /**
+     * Finds all entities having one of the given identifiers with one <code>identifier IN (...)</code> query per
+     * {@value #MAX_IN_IDENTIFIERS} identifiers.
+     *
+     * @param identifiers
+     *            the identifiers to look up
+     * @return the entities found, possibly several per identifier
+     */
+    default List<T> findAllByIdentifier(Collection<String> identifiers) {
+        List<String> values = new ArrayList<>(identifiers);
+        List<T> instances = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += MAX_IN_IDENTIFIERS) {
+            instances.addAll(findByIdentifierIn(values.subList(i, Math.min(i + MAX_IN_IDENTIFIERS, values.size()))));
+        }
+        return instances;
+    }
+
+    /**
+     * Checks if a persisted entity found by the identifier of the given entity is the instance
+     * {@link #getInstance(DescribableEntity)} would return for it.
+     *
+     * @param instance
+     *            the persisted entity with the same identifier
+     * @param entity
+     *            the entity to get the instance for
+     * @return <code>true</code> if the persisted entity is the instance of the given entity
+     */
+    default boolean isInstance(T instance, T entity) {
+        return true;
+    }
+
 }
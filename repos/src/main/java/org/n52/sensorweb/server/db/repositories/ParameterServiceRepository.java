@@ -29,6 +29,7 @@ package org.n52.sensorweb.server.db.repositories;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -52,6 +53,13 @@ public interface ParameterServiceRepository<T extends DescribableEntity>
         return findByIdentifierAndService(createIdentifierServiceExample(entity)).orElse(null);
     }
 
+    @Override
+    default boolean isInstance(T instance, T entity) {
+        // the example of getInstance() ignores an unset service
+        return entity.getService() == null || instance.getService() != null
+                && Objects.equals(entity.getService().getIdentifier(), instance.getService().getIdentifier());
+    }
+
     default Example<T> createExample(T entity, ExampleMatcher matcher) {
         return Example.<T> of(entity, matcher);
     }